@@ -0,0 +1,80 @@
+package net.ripe.rpki.ta;
+
+import net.ripe.rpki.commons.crypto.x509cert.X509ResourceCertificate;
+import net.ripe.rpki.commons.ta.domain.request.TrustAnchorRequest;
+import net.ripe.rpki.ta.config.Config;
+import net.ripe.rpki.ta.config.Env;
+import net.ripe.rpki.ta.serializers.Serializers;
+import net.ripe.rpki.ta.serializers.legacy.SignedResourceCertificate;
+import net.ripe.rpki.ta.util.ValidityPeriods;
+import org.joda.time.DateTime;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Fixtures for the benchmarks: a software-key TA with the given number of tracked certificates. One in ten is live,
+ * the others are revoked but not yet expired, so they are on the CRL and are not compacted away.
+ *
+ * The tracked certificates share the DER of the TA certificate with their own serial, file name and key identifier,
+ * which gives the state a realistic size without signing all of them.
+ */
+final class BenchmarkStates {
+
+    private BenchmarkStates() {
+    }
+
+    static TA create(int trackedObjects, File storageDirectory) throws Exception {
+        final Config config = Env.local();
+        config.setPersistentStorageDir(storageDirectory.getAbsolutePath());
+        final TA ta = TA.initialise(config);
+
+        final X509ResourceCertificate certificate = ta.getTaCertificate();
+        final DateTime notValidAfter = ValidityPeriods.now().plusYears(1);
+        final DateTime revocationTime = ValidityPeriods.now().minusDays(1);
+        final List<SignedResourceCertificate> certificates = ta.getState().getSignedProductionCertificates();
+        for (int i = 0; i < trackedObjects; i++) {
+            certificates.add(SignedResourceCertificate.fromEncoded("object-" + i + ".cer", certificate.getEncoded(),
+                    BigInteger.valueOf(1000L + i), notValidAfter, i % 10 == 0 ? null : revocationTime, "key-" + i));
+        }
+        ta.getState().setLastIssuedCertificateSerial(BigInteger.valueOf(1000L + trackedObjects));
+        return ta;
+    }
+
+    /**
+     * A request without signing or revocation requests, for the locations in the configuration, so processing it
+     * only produces a new CRL and manifest.
+     */
+    static TrustAnchorRequest emptyRequest(Config config) {
+        final String xml = "<requests.TrustAnchorRequest>" +
+                "<creationTimestamp>" + System.currentTimeMillis() + "</creationTimestamp>" +
+                "<taCertificatePublicationUri>" + config.getTaCertificatePublicationUri() + "</taCertificatePublicationUri>" +
+                "<taRequests/>" +
+                "<siaDescriptors>" +
+                "<X509CertificateInformationAccessDescriptor>" +
+                "<method>1.3.6.1.5.5.7.48.13</method><location>" + config.getNotificationUri() + "</location>" +
+                "</X509CertificateInformationAccessDescriptor>" +
+                "<X509CertificateInformationAccessDescriptor>" +
+                "<method>1.3.6.1.5.5.7.48.5</method><location>" + config.getTaProductsPublicationUri() + "</location>" +
+                "</X509CertificateInformationAccessDescriptor>" +
+                "</siaDescriptors>" +
+                "</requests.TrustAnchorRequest>";
+        return Serializers.trustAnchorRequest().deserialize(xml);
+    }
+
+    static File temporaryDirectory() throws IOException {
+        return Files.createTempDirectory("ta-benchmark").toFile();
+    }
+
+    static void delete(File directory) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory.toPath())) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+}
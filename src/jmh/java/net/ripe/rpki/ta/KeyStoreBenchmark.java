@@ -0,0 +1,62 @@
+package net.ripe.rpki.ta;
+
+import net.ripe.rpki.commons.crypto.x509cert.X509ResourceCertificate;
+import net.ripe.rpki.ta.config.Config;
+import net.ripe.rpki.ta.config.Env;
+import org.apache.commons.lang3.tuple.Pair;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.security.KeyPair;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding and decoding the (software) key store, with and without the per-process cache of the decoded key store.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+public class KeyStoreBenchmark {
+
+    private KeyStore keyStore;
+    private byte[] encoded;
+    private KeyPair keyPair;
+    private X509ResourceCertificate certificate;
+
+    @Setup
+    public void setUp() throws Exception {
+        final Config config = Env.local();
+        keyStore = KeyStore.of(config);
+        encoded = TA.initialise(config).getState().getEncoded();
+        final Pair<KeyPair, X509ResourceCertificate> decoded = keyStore.decode(encoded);
+        keyPair = decoded.getLeft();
+        certificate = decoded.getRight();
+    }
+
+    @Benchmark
+    public byte[] encode() throws Exception {
+        return keyStore.encode(keyPair, certificate);
+    }
+
+    @Benchmark
+    public Pair<KeyPair, X509ResourceCertificate> decode() throws Exception {
+        KeyStore.invalidate(encoded);
+        return keyStore.decode(encoded);
+    }
+
+    @Benchmark
+    public Pair<KeyPair, X509ResourceCertificate> decodeCached() throws Exception {
+        return keyStore.decode(encoded);
+    }
+}
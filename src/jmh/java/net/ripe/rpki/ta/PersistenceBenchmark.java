@@ -0,0 +1,86 @@
+package net.ripe.rpki.ta;
+
+import net.ripe.rpki.ta.domain.TAState;
+import net.ripe.rpki.ta.persistence.PersistedState;
+import net.ripe.rpki.ta.persistence.TAPersistence;
+import net.ripe.rpki.ta.serializers.StateFormat;
+import org.apache.commons.lang3.tuple.Pair;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Saving (including the backup of the previous state) and loading the state in both formats.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+public class PersistenceBenchmark {
+
+    private static final Set<String> STATE_FILES = Set.of("ta.xml", "ta.bin", "ta.journal");
+
+    @Param({"10", "1000", "10000", "100000"})
+    public int trackedObjects;
+
+    @Param({"XML", "BINARY"})
+    public StateFormat format;
+
+    private File storageDirectory;
+    private TAState state;
+    private TAPersistence persistence;
+
+    @Setup
+    public void setUp() throws Exception {
+        storageDirectory = BenchmarkStates.temporaryDirectory();
+        state = BenchmarkStates.create(trackedObjects, storageDirectory).getState();
+        persistence = new TAPersistence(state.getConfig());
+        persistence.save(state, format);
+    }
+
+    /**
+     * Every save stores a backup of the previous state, remove those so they do not fill the disk.
+     */
+    @TearDown(Level.Invocation)
+    public void removeBackups() {
+        final File[] files = storageDirectory.listFiles();
+        if (files != null) {
+            for (final File file : files) {
+                if (!STATE_FILES.contains(file.getName())) {
+                    file.delete();
+                }
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        BenchmarkStates.delete(storageDirectory);
+    }
+
+    @Benchmark
+    public void save() throws Exception {
+        persistence.save(state, format);
+    }
+
+    @Benchmark
+    public Pair<TAState, PersistedState> load() throws Exception {
+        return persistence.load();
+    }
+}
@@ -0,0 +1,83 @@
+package net.ripe.rpki.ta;
+
+import net.ripe.rpki.commons.crypto.cms.manifest.ManifestCms;
+import net.ripe.rpki.commons.crypto.crl.X509Crl;
+import net.ripe.rpki.commons.ta.domain.request.TrustAnchorRequest;
+import net.ripe.rpki.commons.ta.domain.response.TrustAnchorResponse;
+import net.ripe.rpki.ta.config.ProgramOptions;
+import net.ripe.rpki.ta.domain.TAState;
+import org.apache.commons.lang3.tuple.Pair;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Processing a request that only re-issues the CRL and manifest, and those two steps on their own.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+public class RequestProcessingBenchmark {
+
+    @Param({"10", "1000", "10000", "100000"})
+    public int trackedObjects;
+
+    private File storageDirectory;
+    private TA ta;
+    private TrustAnchorRequest request;
+    private ProgramOptions options;
+    private TA.SignCtx signCtx;
+
+    @Setup
+    public void setUp() throws Exception {
+        storageDirectory = BenchmarkStates.temporaryDirectory();
+        ta = BenchmarkStates.create(trackedObjects, storageDirectory);
+        request = BenchmarkStates.emptyRequest(ta.getState().getConfig());
+        options = new ProgramOptions();
+    }
+
+    /**
+     * Every manifest is added to the state of the signing context, so use a fresh one for every invocation.
+     */
+    @Setup(Level.Invocation)
+    public void setUpSignContext() throws Exception {
+        signCtx = ta.signContext(request);
+        signCtx.taState.setCrl(ta.createNewCrl(signCtx));
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        BenchmarkStates.delete(storageDirectory);
+    }
+
+    @Benchmark
+    public Pair<TrustAnchorResponse, TAState> processRequest() throws Exception {
+        return ta.processRequest(request, options);
+    }
+
+    @Benchmark
+    public X509Crl createNewCrl() {
+        return ta.createNewCrl(signCtx);
+    }
+
+    @Benchmark
+    public ManifestCms createNewManifest() {
+        return ta.createNewManifest(signCtx);
+    }
+}
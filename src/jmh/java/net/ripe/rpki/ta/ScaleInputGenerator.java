@@ -0,0 +1,253 @@
+package net.ripe.rpki.ta;
+
+import com.google.common.io.BaseEncoding;
+import lombok.extern.slf4j.Slf4j;
+import net.ripe.rpki.commons.crypto.util.KeyPairFactory;
+import net.ripe.rpki.commons.crypto.util.KeyPairUtil;
+import net.ripe.rpki.commons.ta.domain.request.TrustAnchorRequest;
+import net.ripe.rpki.commons.ta.serializers.TrustAnchorRequestSerializer;
+import net.ripe.rpki.ta.config.Config;
+import net.ripe.rpki.ta.config.EnvStub;
+import net.ripe.rpki.ta.config.ProgramOptions;
+import net.ripe.rpki.ta.domain.TAState;
+import net.ripe.rpki.ta.serializers.Serializers;
+import net.ripe.rpki.ta.serializers.StateFormat;
+import net.ripe.rpki.ta.serializers.legacy.SignedResourceCertificate;
+import net.ripe.rpki.ta.util.ValidityPeriods;
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.KeyPair;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Generates a TA state of a given size and a request against it, for benchmarks and load tests. Uses the test
+ * environment with software (SunRsaSign) keys.
+ *
+ * The state is built by processing a history of generated requests, so it contains genuine certificates, CRLs and
+ * manifests:
+ * <ul>
+ *     <li>every processed request issues a manifest, so the history depth is the number of manifests in the state
+ *     (the latest one live, the others revoked);</li>
+ *     <li>every live certificate has its own key, revoked certificates are the earlier certificates of those keys,
+ *     revoked by signing a new certificate for the key.</li>
+ * </ul>
+ * The output directory contains the state in {@code state/}, the history of requests and responses in
+ * {@code history/} and the next request, with the requested number of signing and revocation requests for keys of
+ * live certificates, in {@code request.xml}.
+ *
+ * Generating a key per live certificate dominates the run time for large states, so the output is meant to be
+ * generated once and copied for every run that changes it.
+ */
+@Slf4j
+public final class ScaleInputGenerator {
+
+    private static final String RESOURCE_CLASS = "DEFAULT";
+
+    private final Config config;
+    private final File outputDirectory;
+    private final int historyDepth;
+    private final int liveCertificates;
+    private final int revokedCertificates;
+    private final int signingThreads;
+    private final StateFormat stateFormat;
+
+    private long nextCreationTimestamp;
+
+    ScaleInputGenerator(File outputDirectory, int historyDepth, int liveCertificates, int revokedCertificates,
+                        int signingThreads, StateFormat stateFormat) {
+        if (historyDepth < 1) {
+            throw new IllegalArgumentException("The history depth must be at least 1.");
+        }
+        if (revokedCertificates > 0 && liveCertificates == 0) {
+            throw new IllegalArgumentException("Revoked certificates are earlier certificates of live keys, at least one live certificate is needed.");
+        }
+        this.config = EnvStub.test().copy();
+        this.outputDirectory = outputDirectory;
+        this.historyDepth = historyDepth;
+        this.liveCertificates = liveCertificates;
+        this.revokedCertificates = revokedCertificates;
+        this.signingThreads = signingThreads;
+        this.stateFormat = stateFormat;
+        this.nextCreationTimestamp = ValidityPeriods.now().getMillis() - historyDepth - 1;
+    }
+
+    public static void main(String[] args) throws Exception {
+        final Options options = new Options();
+        options.addOption(option("output-directory", "Directory for the generated state and requests (required)"));
+        options.addOption(option("history", "Number of requests processed to build the state, one manifest each (default 1)"));
+        options.addOption(option("live-certificates", "Number of live certificates in the state (default 100)"));
+        options.addOption(option("revoked-certificates", "Number of revoked certificates in the state (default 0)"));
+        options.addOption(option("signing-requests", "Number of signing requests in request.xml (default 0)"));
+        options.addOption(option("revocation-requests", "Number of revocation requests in request.xml (default 0)"));
+        options.addOption(option("state-format", "Format of the state, 'xml' or 'binary' (default xml)"));
+
+        final CommandLine commandLine;
+        try {
+            commandLine = new DefaultParser().parse(options, args);
+            if (!commandLine.hasOption("output-directory")) {
+                throw new ParseException("Missing --output-directory");
+            }
+        } catch (ParseException e) {
+            System.err.println(e.getMessage());
+            new HelpFormatter().printHelp("generateScaleInputs", options);
+            System.exit(2);
+            return;
+        }
+
+        final ScaleInputGenerator generator = new ScaleInputGenerator(
+                new File(commandLine.getOptionValue("output-directory")),
+                Integer.parseInt(commandLine.getOptionValue("history", "1")),
+                Integer.parseInt(commandLine.getOptionValue("live-certificates", "100")),
+                Integer.parseInt(commandLine.getOptionValue("revoked-certificates", "0")),
+                Runtime.getRuntime().availableProcessors(),
+                StateFormat.parse(commandLine.getOptionValue("state-format", "xml")));
+        generator.generate(
+                Integer.parseInt(commandLine.getOptionValue("signing-requests", "0")),
+                Integer.parseInt(commandLine.getOptionValue("revocation-requests", "0")));
+    }
+
+    private static Option option(String name, String description) {
+        return Option.builder().longOpt(name).hasArg().desc(description).build();
+    }
+
+    void generate(int signingRequests, int revocationRequests) throws Exception {
+        if (revocationRequests > liveCertificates) {
+            throw new IllegalArgumentException("Can not revoke more than the " + liveCertificates + " live certificates.");
+        }
+        if (signingRequests > 0 && liveCertificates == 0) {
+            throw new IllegalArgumentException("Signing requests are for keys of live certificates, at least one live certificate is needed.");
+        }
+        final File stateDirectory = directory(outputDirectory, "state");
+        final File requestDirectory = directory(outputDirectory, "history/requests");
+        final File responseDirectory = directory(outputDirectory, "history/responses");
+        config.setPersistentStorageDir(stateDirectory.getAbsolutePath());
+
+        final long start = System.nanoTime();
+        final List<KeyPair> keys = IntStream.range(0, liveCertificates).parallel()
+                .mapToObj(i -> new KeyPairFactory("SunRsaSign").withProvider("SunRsaSign").generate())
+                .collect(Collectors.toList());
+        log.info("Generated {} key pairs in {} ms", keys.size(), (System.nanoTime() - start) / 1_000_000);
+
+        // Every key is signed once, the keys of revoked certificates are signed again later on. Spread these
+        // signings evenly over the history.
+        final List<KeyPair> signings = new ArrayList<>(keys);
+        for (int i = 0; i < revokedCertificates; i++) {
+            signings.add(keys.get(i % keys.size()));
+        }
+        for (int round = 0; round < historyDepth; round++) {
+            final List<KeyPair> roundSignings = signings.subList(
+                    (int) ((long) signings.size() * round / historyDepth),
+                    (int) ((long) signings.size() * (round + 1) / historyDepth));
+            write(new File(requestDirectory, String.format("request-%06d.xml", round + 1)), request(roundSignings, List.of()));
+        }
+
+        final TA ta = TA.initialise(config);
+        ta.processRequestBatch(new ProgramOptions(
+                "--env=test",
+                "--request-batch=" + requestDirectory.getAbsolutePath(),
+                "--response-directory=" + responseDirectory.getAbsolutePath(),
+                "--signing-threads=" + signingThreads));
+        ta.persist(stateFormat, false);
+        logState(ta.getState());
+
+        write(new File(outputDirectory, "request.xml"), request(
+                IntStream.range(0, signingRequests).mapToObj(i -> keys.get(i % keys.size())).collect(Collectors.toList()),
+                keys.subList(keys.size() - revocationRequests, keys.size())));
+        log.info("Generated state and request with {} signing and {} revocation requests in '{}' in {} ms",
+                signingRequests, revocationRequests, outputDirectory, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private static void logState(TAState state) {
+        log.info("State has {} certificates ({} revoked), {} manifests and {} revocations",
+                state.getSignedProductionCertificates().size(),
+                state.getSignedProductionCertificates().stream().filter(SignedResourceCertificate::isRevoked).count(),
+                state.getSignedManifests().size(),
+                state.getRevocations().size());
+    }
+
+    /**
+     * A request in the XML format of the requests that the RIPE NCC CA software writes.
+     */
+    String request(List<KeyPair> signings, List<KeyPair> revocations) {
+        final StringBuilder xml = new StringBuilder();
+        xml.append("<requests.TrustAnchorRequest>")
+                .append("<creationTimestamp>").append(nextCreationTimestamp++).append("</creationTimestamp>")
+                .append("<taCertificatePublicationUri>").append(config.getTaCertificatePublicationUri()).append("</taCertificatePublicationUri>")
+                .append("<taRequests>");
+        for (final KeyPair key : revocations) {
+            xml.append("<requests.RevocationRequest>")
+                    .append("<requestId>").append(UUID.randomUUID()).append("</requestId>")
+                    .append("<resourceClassName>").append(RESOURCE_CLASS).append("</resourceClassName>")
+                    .append("<encodedPublicKey>").append(KeyPairUtil.getEncodedKeyIdentifier(key.getPublic())).append("</encodedPublicKey>")
+                    .append("</requests.RevocationRequest>");
+        }
+        for (final KeyPair key : signings) {
+            final String keyHash = keyHash(key.getPublic());
+            final String repository = config.getTaProductsPublicationUri().resolve(keyHash + "/").toString();
+            xml.append("<requests.SigningRequest>")
+                    .append("<requestId>").append(UUID.randomUUID()).append("</requestId>")
+                    .append("<resourceCertificateRequest>")
+                    .append("<resourceClassName>").append(RESOURCE_CLASS).append("</resourceClassName>")
+                    .append("<subjectDN>CN=").append(keyHash).append("</subjectDN>")
+                    .append("<subjectInformationAccess>")
+                    .append(descriptor("1.3.6.1.5.5.7.48.5", repository))
+                    .append(descriptor("1.3.6.1.5.5.7.48.10", repository + keyHash + ".mft"))
+                    .append(descriptor("1.3.6.1.5.5.7.48.13", config.getNotificationUri().toString()))
+                    .append("</subjectInformationAccess>")
+                    .append("<ipResourceSet></ipResourceSet>")
+                    .append("<encodedSubjectPublicKey>").append(BaseEncoding.base64().encode(key.getPublic().getEncoded())).append("</encodedSubjectPublicKey>")
+                    .append("</resourceCertificateRequest>")
+                    .append("</requests.SigningRequest>");
+        }
+        xml.append("</taRequests>")
+                .append("<siaDescriptors>")
+                .append(descriptor("1.3.6.1.5.5.7.48.13", config.getNotificationUri().toString()))
+                .append(descriptor("1.3.6.1.5.5.7.48.5", config.getTaProductsPublicationUri().toString()))
+                .append("</siaDescriptors>")
+                .append("</requests.TrustAnchorRequest>");
+
+        // Round trip through the serializer, so only requests that the TA can read are written
+        final TrustAnchorRequestSerializer serializer = Serializers.trustAnchorRequest();
+        final TrustAnchorRequest request = serializer.deserialize(xml.toString());
+        return serializer.serialize(request);
+    }
+
+    private static String descriptor(String method, String location) {
+        return "<X509CertificateInformationAccessDescriptor><method>" + method + "</method><location>" + location +
+                "</location></X509CertificateInformationAccessDescriptor>";
+    }
+
+    private static String keyHash(PublicKey publicKey) {
+        try {
+            return BaseEncoding.base16().lowerCase().encode(MessageDigest.getInstance("SHA-1").digest(publicKey.getEncoded()));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static File directory(File parent, String name) throws IOException {
+        final File directory = new File(parent, name);
+        Files.createDirectories(directory.toPath());
+        return directory;
+    }
+
+    private static void write(File file, String content) throws IOException {
+        Files.writeString(file.toPath(), content, StandardCharsets.UTF_8);
+    }
+}
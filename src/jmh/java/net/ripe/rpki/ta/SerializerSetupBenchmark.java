@@ -0,0 +1,83 @@
+package net.ripe.rpki.ta;
+
+import net.ripe.rpki.commons.ta.domain.request.TrustAnchorRequest;
+import net.ripe.rpki.commons.ta.serializers.TrustAnchorRequestSerializer;
+import net.ripe.rpki.commons.ta.serializers.TrustAnchorResponseSerializer;
+import net.ripe.rpki.ta.config.Config;
+import net.ripe.rpki.ta.config.Env;
+import net.ripe.rpki.ta.serializers.ConfigSerializer;
+import net.ripe.rpki.ta.serializers.Serializers;
+import net.ripe.rpki.ta.serializers.TAStateSerializer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The cost of configuring the XStream based serializers, compared to using a shared instance for a small document.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+public class SerializerSetupBenchmark {
+
+    private Config config;
+    private String requestXml;
+
+    @Setup
+    public void setUp() {
+        config = Env.local();
+        requestXml = Serializers.trustAnchorRequest().serialize(BenchmarkStates.emptyRequest(config));
+    }
+
+    @Benchmark
+    public TAStateSerializer createStateSerializer() {
+        return new TAStateSerializer();
+    }
+
+    @Benchmark
+    public ConfigSerializer createConfigSerializer() {
+        return new ConfigSerializer();
+    }
+
+    @Benchmark
+    public TrustAnchorRequestSerializer createRequestSerializer() {
+        return new TrustAnchorRequestSerializer();
+    }
+
+    @Benchmark
+    public TrustAnchorResponseSerializer createResponseSerializer() {
+        return new TrustAnchorResponseSerializer();
+    }
+
+    @Benchmark
+    public String serializeConfigWithNewSerializer() {
+        return new ConfigSerializer().serialize(config);
+    }
+
+    @Benchmark
+    public String serializeConfigWithSharedSerializer() {
+        return Serializers.config().serialize(config);
+    }
+
+    @Benchmark
+    public TrustAnchorRequest parseRequestWithNewSerializer() {
+        return new TrustAnchorRequestSerializer().deserialize(requestXml);
+    }
+
+    @Benchmark
+    public TrustAnchorRequest parseRequestWithSharedSerializer() {
+        return Serializers.trustAnchorRequest().deserialize(requestXml);
+    }
+}
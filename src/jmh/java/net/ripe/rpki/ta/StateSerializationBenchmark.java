@@ -0,0 +1,60 @@
+package net.ripe.rpki.ta;
+
+import net.ripe.rpki.ta.domain.TAState;
+import net.ripe.rpki.ta.serializers.Serializers;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * XML (ta.xml) serialization of the TA state.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+public class StateSerializationBenchmark {
+
+    @Param({"10", "1000", "10000", "100000"})
+    public int trackedObjects;
+
+    private File storageDirectory;
+    private TAState state;
+    private String xml;
+
+    @Setup
+    public void setUp() throws Exception {
+        storageDirectory = BenchmarkStates.temporaryDirectory();
+        state = BenchmarkStates.create(trackedObjects, storageDirectory).getState();
+        xml = Serializers.taState().serialize(state);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        BenchmarkStates.delete(storageDirectory);
+    }
+
+    @Benchmark
+    public String serialize() {
+        return Serializers.taState().serialize(state);
+    }
+
+    @Benchmark
+    public TAState deserialize() {
+        return Serializers.taState().deserialize(xml);
+    }
+}
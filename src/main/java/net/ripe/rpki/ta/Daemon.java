@@ -0,0 +1,254 @@
+package net.ripe.rpki.ta;
+
+
+import com.google.common.io.BaseEncoding;
+import lombok.extern.slf4j.Slf4j;
+import net.ripe.rpki.ta.config.Config;
+import net.ripe.rpki.ta.config.ProgramOptions;
+import net.ripe.rpki.ta.exception.BadOptionsException;
+import net.ripe.rpki.ta.util.RunReport;
+import net.ripe.rpki.ta.util.ValidityPeriods;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Serves commands against a loaded TA, so the JVM, the providers and the state stay warm between commands.
+ *
+ * The daemon listens on the loopback interface. A client sends the token from the daemon file (ta.daemon, readable
+ * only by its owner) in the storage directory on the first line, then one command per line. A command consists of
+ * the same options as the command line, except --env, --storage-directory and --initialise, for example
+ * "--request=/path/request.xml --response=/path/response.xml" or "--print-tal=/path/ta.tal". File names are resolved
+ * by the daemon. Arguments are quoted like in a shell, e.g. "--request='/path/my request.xml'". Every command is
+ * answered with a line "OK" or "ERROR message", "SHUTDOWN" stops the daemon.
+ *
+ * Commands that change the state are executed one at a time and the state is persisted before they are answered.
+ * Read-only commands can run concurrently with each other.
+ */
+@Slf4j
+public class Daemon {
+
+    static final String FILENAME = "ta.daemon";
+    static final String SHUTDOWN = "SHUTDOWN";
+
+    private final TA ta;
+    private final Config config;
+    private final String env;
+    private final ServerSocket serverSocket;
+    private final File daemonFile;
+    private final String token;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final ExecutorService connections = Executors.newCachedThreadPool();
+
+    Daemon(TA ta, Config config, ProgramOptions options) throws IOException, BadOptionsException {
+        this.ta = ta;
+        this.config = config;
+        this.env = options.getEnv();
+        this.serverSocket = new ServerSocket(options.getDaemonPort(), 50, InetAddress.getLoopbackAddress());
+
+        final byte[] random = new byte[32];
+        new SecureRandom().nextBytes(random);
+        this.token = BaseEncoding.base16().lowerCase().encode(random);
+
+        this.daemonFile = new File(config.getPersistentStorageDir(), FILENAME);
+        try {
+            writeDaemonFile();
+        } catch (IOException e) {
+            serverSocket.close();
+            throw e;
+        }
+    }
+
+    private void writeDaemonFile() throws IOException {
+        Files.deleteIfExists(daemonFile.toPath());
+        try {
+            Files.createFile(daemonFile.toPath(), PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        } catch (UnsupportedOperationException e) {
+            Files.createFile(daemonFile.toPath());
+        }
+        Files.writeString(daemonFile.toPath(), getPort() + " " + token + "\n", StandardCharsets.UTF_8);
+    }
+
+    int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Accept connections until the daemon is shut down.
+     */
+    void serve() throws IOException {
+        log.info("Serving trust anchor commands on {}, access token in '{}'", serverSocket.getLocalSocketAddress(), daemonFile);
+        try {
+            while (!serverSocket.isClosed()) {
+                final Socket socket;
+                try {
+                    socket = serverSocket.accept();
+                } catch (SocketException e) {
+                    if (serverSocket.isClosed()) {
+                        break;
+                    }
+                    throw e;
+                }
+                connections.execute(() -> handle(socket));
+            }
+        } finally {
+            connections.shutdown();
+            EeKeyPool.stop();
+            Files.deleteIfExists(daemonFile.toPath());
+            log.info("Trust anchor daemon stopped");
+        }
+    }
+
+    void shutdown() throws IOException {
+        serverSocket.close();
+    }
+
+    private void handle(Socket socket) {
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+             PrintWriter out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8), true)) {
+            final String clientToken = in.readLine();
+            if (clientToken == null || !MessageDigest.isEqual(token.getBytes(StandardCharsets.UTF_8), clientToken.trim().getBytes(StandardCharsets.UTF_8))) {
+                log.warn("Rejected connection from {} with an invalid token", socket.getRemoteSocketAddress());
+                out.println("ERROR Invalid token");
+                return;
+            }
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                if (SHUTDOWN.equals(line.trim())) {
+                    out.println("OK");
+                    shutdown();
+                    return;
+                }
+                out.println(execute(line.trim()));
+            }
+        } catch (IOException e) {
+            log.warn("Connection from {} failed", socket.getRemoteSocketAddress(), e);
+        }
+    }
+
+    String execute(String command) {
+        final long start = System.nanoTime();
+        RunReport.start(command);
+        try {
+            final ProgramOptions options = commandOptions(command);
+            final Lock commandLock = options.isReadOnly() ? lock.readLock() : lock.writeLock();
+            commandLock.lock();
+            try {
+                // the checks and objects of this command use the current time, not the time the daemon started. Commands
+                // that change the state hold the write lock, so the time does not change while they sign.
+                ValidityPeriods.setGlobalNow(DateTime.now(DateTimeZone.UTC));
+                Main.execute(ta, options);
+                if (!options.isReadOnly()) {
+                    Main.persist(ta, options);
+                    ta.publish(options);
+                }
+            } finally {
+                commandLock.unlock();
+            }
+            log.info("Executed '{}' in {} ms", command, (System.nanoTime() - start) / 1_000_000);
+            Main.report(RunReport.finish(Main.EXIT_OK), config);
+            return "OK";
+        } catch (BadOptionsException e) {
+            RunReport.finish(Main.EXIT_ERROR_2);
+            return "ERROR " + oneLine(e.getMessage());
+        } catch (Exception e) {
+            log.error("Command '{}' failed", command, e);
+            Main.report(RunReport.finish(Main.EXIT_ERROR_2), config);
+            return "ERROR " + oneLine(e.getMessage());
+        }
+    }
+
+    private ProgramOptions commandOptions(String command) throws BadOptionsException {
+        final List<String> args = arguments(command);
+        final ProgramOptions commandOnly = new ProgramOptions(args.toArray(new String[0]));
+        if (commandOnly.hasEnv() || commandOnly.hasPersistentStoragePath() || commandOnly.hasInitialiseOption() || commandOnly.hasDaemonOption()) {
+            throw new BadOptionsException("Options --env, --storage-directory, --initialise and --daemon can not be used in a daemon command.");
+        }
+        args.add("--env=" + env);
+        final ProgramOptions options = new ProgramOptions(args.toArray(new String[0]));
+        options.validateOptions();
+        return options;
+    }
+
+    /**
+     * Split a command line into arguments like a shell does: on whitespace, except within single or double quotes,
+     * and a backslash escapes the next character outside single quotes. For example
+     * {@code --request="/path/my request.xml"} is one argument.
+     */
+    static List<String> arguments(String command) throws BadOptionsException {
+        final List<String> result = new ArrayList<>();
+        final StringBuilder argument = new StringBuilder();
+        boolean inArgument = false;
+        char quote = 0;
+        for (int i = 0; i < command.length(); i++) {
+            final char c = command.charAt(i);
+            if (quote == '\'') {
+                if (c == '\'') {
+                    quote = 0;
+                } else {
+                    argument.append(c);
+                }
+            } else if (c == '\\') {
+                if (++i == command.length()) {
+                    throw new BadOptionsException("Command ends with an escape character.");
+                }
+                argument.append(command.charAt(i));
+                inArgument = true;
+            } else if (quote == '"') {
+                if (c == '"') {
+                    quote = 0;
+                } else {
+                    argument.append(c);
+                }
+            } else if (c == '\'' || c == '"') {
+                quote = c;
+                inArgument = true;
+            } else if (Character.isWhitespace(c)) {
+                if (inArgument) {
+                    result.add(argument.toString());
+                    argument.setLength(0);
+                    inArgument = false;
+                }
+            } else {
+                argument.append(c);
+                inArgument = true;
+            }
+        }
+        if (quote != 0) {
+            throw new BadOptionsException("Command has an unterminated quote.");
+        }
+        if (inArgument) {
+            result.add(argument.toString());
+        }
+        return result;
+    }
+
+    private static String oneLine(String message) {
+        return message == null ? "" : message.replaceAll("\\s+", " ").trim();
+    }
+}
@@ -0,0 +1,176 @@
+package net.ripe.rpki.ta;
+
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.extern.slf4j.Slf4j;
+import net.ripe.rpki.commons.crypto.util.KeyPairFactory;
+import net.ripe.rpki.ta.config.Config;
+
+import javax.security.auth.DestroyFailedException;
+import java.security.KeyPair;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Key pairs for the one-time-use EE certificates of manifests, generated on background threads while the state is
+ * loaded and the request is parsed, so key generation is not in the critical path of processing a request.
+ *
+ * Pooled key pairs are generated with the providers of the configuration, exactly like inline generation, so with a
+ * HSM they are created inside the HSM. Key pairs taken from the pool are only replaced when more requests are expected
+ * (a batch or the daemon), since with a HSM every generated key pair is created in the security world. Key pairs that
+ * are left when the pool is stopped are destroyed.
+ */
+@Slf4j
+public class EeKeyPool {
+
+    private static EeKeyPool pool;
+
+    private final String keystoreProvider;
+    private final String keypairGeneratorProvider;
+    private final ExecutorService executor;
+    private final Queue<Future<KeyPair>> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger taken = new AtomicInteger();
+    private final boolean replenish;
+
+    private EeKeyPool(Config config, int size, boolean replenish) {
+        this.replenish = replenish;
+        this.keystoreProvider = config.getKeystoreProvider();
+        this.keypairGeneratorProvider = config.getKeypairGeneratorProvider();
+        this.executor = Executors.newFixedThreadPool(
+                Math.min(size, Runtime.getRuntime().availableProcessors()),
+                new ThreadFactoryBuilder().setNameFormat("ee-key-pool-%d").setDaemon(true).build());
+        for (int i = 0; i < size; i++) {
+            refill();
+        }
+    }
+
+    /**
+     * Start generating key pairs for the providers of the configuration, replacing a previously started pool.
+     *
+     * @param replenish replace every key pair that is taken, for runs that process more than one request.
+     */
+    public static synchronized void start(Config config, int size, boolean replenish) {
+        stop();
+        pool = new EeKeyPool(config, size, replenish);
+        log.info("Generating {} EE key pairs in the background with provider {}", size, config.getKeypairGeneratorProvider());
+    }
+
+    /**
+     * Stop the pool: generations that did not start yet are cancelled, running ones are waited for, and all key pairs
+     * that were not taken are destroyed.
+     */
+    public static synchronized void stop() {
+        if (pool != null) {
+            final int discarded = pool.discard();
+            log.info("Stopped EE key pool, {} key pairs were taken from it, {} were discarded", pool.taken.get(), discarded);
+            pool = null;
+        }
+    }
+
+    /**
+     * Take a key pair from the pool. When there is no pool for the providers of the configuration or the key pair
+     * could not be generated in the background, it is generated inline.
+     */
+    public static KeyPair take(Config config) {
+        final EeKeyPool current;
+        synchronized (EeKeyPool.class) {
+            current = pool;
+        }
+        if (current != null && current.isFor(config)) {
+            final KeyPair keyPair = current.poll();
+            if (keyPair != null) {
+                return keyPair;
+            }
+        }
+        return generate(config.getKeystoreProvider(), config.getKeypairGeneratorProvider());
+    }
+
+    static synchronized int available() {
+        return pool == null ? 0 : pool.pending.size();
+    }
+
+    private static KeyPair generate(String keystoreProvider, String keypairGeneratorProvider) {
+        return new KeyPairFactory(keystoreProvider).withProvider(InstrumentedProvider.wrap(keypairGeneratorProvider)).generate();
+    }
+
+    private boolean isFor(Config config) {
+        return Objects.equals(keystoreProvider, config.getKeystoreProvider())
+                && Objects.equals(keypairGeneratorProvider, config.getKeypairGeneratorProvider());
+    }
+
+    /**
+     * Take the oldest key pair, waiting for its generation to finish when needed: it started before any inline
+     * generation would.
+     */
+    private KeyPair poll() {
+        final Future<KeyPair> next = pending.poll();
+        if (next == null) {
+            return null;
+        }
+        if (replenish) {
+            refill();
+        }
+        try {
+            final KeyPair keyPair = next.get();
+            taken.incrementAndGet();
+            return keyPair;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            log.warn("Could not generate EE key pair in the background, generating it inline", e.getCause());
+            return null;
+        } catch (CancellationException e) {
+            return null;
+        }
+    }
+
+    private int discard() {
+        executor.shutdown();
+        pending.forEach(future -> future.cancel(false));
+        try {
+            if (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                log.warn("EE key pair generation did not finish within a minute after stopping the pool");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        int discarded = 0;
+        for (Future<KeyPair> future = pending.poll(); future != null; future = pending.poll()) {
+            if (future.isDone() && !future.isCancelled()) {
+                try {
+                    destroy(future.get());
+                    discarded++;
+                } catch (ExecutionException | InterruptedException e) {
+                    // nothing was generated
+                }
+            }
+        }
+        return discarded;
+    }
+
+    private void destroy(KeyPair keyPair) {
+        try {
+            keyPair.getPrivate().destroy();
+        } catch (DestroyFailedException e) {
+            log.debug("Could not destroy unused EE private key for {} provider", keypairGeneratorProvider);
+        }
+    }
+
+    private void refill() {
+        try {
+            pending.add(executor.submit(() -> generate(keystoreProvider, keypairGeneratorProvider)));
+        } catch (RejectedExecutionException e) {
+            // the pool is stopped
+        }
+    }
+}
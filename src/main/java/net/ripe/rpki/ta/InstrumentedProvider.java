@@ -0,0 +1,232 @@
+package net.ripe.rpki.ta;
+
+
+import lombok.extern.slf4j.Slf4j;
+import net.ripe.rpki.ta.util.LatencyStats;
+
+import java.security.AlgorithmParameters;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.InvalidKeyException;
+import java.security.InvalidParameterException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.KeyPairGeneratorSpi;
+import java.security.NoSuchAlgorithmException;
+import java.security.PrivateKey;
+import java.security.Provider;
+import java.security.PublicKey;
+import java.security.SecureRandom;
+import java.security.Security;
+import java.security.Signature;
+import java.security.SignatureException;
+import java.security.SignatureSpi;
+import java.security.spec.AlgorithmParameterSpec;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * JCA provider that delegates signatures and key pair generation to another provider (e.g. nCipherKM) and records
+ * the count and latency of every signature and key pair generation.
+ *
+ * Instrumentation is opt-in: once it is enabled, {@link #wrap(String)} registers the wrapper for a provider and
+ * returns its name, which is then used instead of the name of the configured provider. The configuration itself
+ * (which is part of the state) is never changed.
+ */
+@Slf4j
+public class InstrumentedProvider extends Provider {
+
+    private static final long serialVersionUID = 1L;
+
+    static final String PREFIX = "Instrumented-";
+
+    private static final String SIGNATURE = "Signature";
+    private static final String KEY_PAIR_GENERATOR = "KeyPairGenerator";
+
+    private static volatile boolean enabled;
+    private static final ConcurrentMap<String, LatencyStats> STATS = new ConcurrentHashMap<>();
+
+    private InstrumentedProvider(Provider delegate) {
+        super(PREFIX + delegate.getName(), delegate.getVersionStr(), "Counts and times the operations of " + delegate.getName());
+        final Map<String, List<String>> aliases = new TreeMap<>();
+        for (final Object key : delegate.keySet()) {
+            final String property = String.valueOf(key);
+            for (final String type : List.of(SIGNATURE, KEY_PAIR_GENERATOR)) {
+                final String aliasPrefix = "Alg.Alias." + type + ".";
+                if (property.startsWith(aliasPrefix)) {
+                    aliases.computeIfAbsent(type + "." + delegate.getProperty(property), k -> new ArrayList<>())
+                            .add(property.substring(aliasPrefix.length()));
+                }
+            }
+        }
+        for (final Service service : delegate.getServices()) {
+            final String type = service.getType();
+            if (SIGNATURE.equals(type) || KEY_PAIR_GENERATOR.equals(type)) {
+                final String algorithm = service.getAlgorithm();
+                final String operation = type + "." + algorithm + "@" + delegate.getName();
+                final String className = SIGNATURE.equals(type) ? InstrumentedSignature.class.getName() : InstrumentedKeyPairGenerator.class.getName();
+                putService(new Service(this, type, algorithm, className, aliases.get(type + "." + algorithm), null) {
+                    @Override
+                    public Object newInstance(Object constructorParameter) throws NoSuchAlgorithmException {
+                        return SIGNATURE.equals(type)
+                                ? new InstrumentedSignature(Signature.getInstance(algorithm, delegate), operation)
+                                : new InstrumentedKeyPairGenerator(KeyPairGenerator.getInstance(algorithm, delegate), operation);
+                    }
+                });
+            }
+        }
+    }
+
+    public static void enable() {
+        enabled = true;
+    }
+
+    public static void disable() {
+        enabled = false;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * The name of the instrumented wrapper of the provider when instrumentation is enabled, otherwise (or when the
+     * provider does not exist) the name of the provider itself.
+     */
+    public static String wrap(String providerName) {
+        if (!enabled || providerName == null) {
+            return providerName;
+        }
+        synchronized (InstrumentedProvider.class) {
+            if (Security.getProvider(PREFIX + providerName) == null) {
+                final Provider delegate = Security.getProvider(providerName);
+                if (delegate == null) {
+                    return providerName;
+                }
+                // at the end of the list, so it is only used when asked for by name
+                Security.addProvider(new InstrumentedProvider(delegate));
+                log.info("Counting and timing the signatures and key pair generation of provider {}", providerName);
+            }
+        }
+        return PREFIX + providerName;
+    }
+
+    /**
+     * The operations recorded since the previous call, by type, algorithm and provider.
+     */
+    public static Map<String, LatencyStats> drain() {
+        final Map<String, LatencyStats> result = new TreeMap<>();
+        for (final String operation : STATS.keySet()) {
+            final LatencyStats stats = STATS.remove(operation);
+            if (stats != null) {
+                result.put(operation, stats);
+            }
+        }
+        return result;
+    }
+
+    private static void record(String operation, long start) {
+        STATS.computeIfAbsent(operation, o -> new LatencyStats()).record(System.nanoTime() - start);
+    }
+
+    private static class InstrumentedSignature extends SignatureSpi {
+        private final Signature delegate;
+        private final String operation;
+
+        InstrumentedSignature(Signature delegate, String operation) {
+            this.delegate = delegate;
+            this.operation = operation;
+        }
+
+        @Override
+        protected void engineInitVerify(PublicKey publicKey) throws InvalidKeyException {
+            delegate.initVerify(publicKey);
+        }
+
+        @Override
+        protected void engineInitSign(PrivateKey privateKey) throws InvalidKeyException {
+            delegate.initSign(privateKey);
+        }
+
+        @Override
+        protected void engineInitSign(PrivateKey privateKey, SecureRandom random) throws InvalidKeyException {
+            delegate.initSign(privateKey, random);
+        }
+
+        @Override
+        protected void engineUpdate(byte b) throws SignatureException {
+            delegate.update(b);
+        }
+
+        @Override
+        protected void engineUpdate(byte[] b, int off, int len) throws SignatureException {
+            delegate.update(b, off, len);
+        }
+
+        @Override
+        protected byte[] engineSign() throws SignatureException {
+            final long start = System.nanoTime();
+            final byte[] signature = delegate.sign();
+            record(operation, start);
+            return signature;
+        }
+
+        @Override
+        protected boolean engineVerify(byte[] sigBytes) throws SignatureException {
+            return delegate.verify(sigBytes);
+        }
+
+        @Override
+        protected void engineSetParameter(AlgorithmParameterSpec params) throws InvalidAlgorithmParameterException {
+            delegate.setParameter(params);
+        }
+
+        @Override
+        protected AlgorithmParameters engineGetParameters() {
+            return delegate.getParameters();
+        }
+
+        @Override
+        @Deprecated
+        protected void engineSetParameter(String param, Object value) throws InvalidParameterException {
+            delegate.setParameter(param, value);
+        }
+
+        @Override
+        @Deprecated
+        protected Object engineGetParameter(String param) throws InvalidParameterException {
+            return delegate.getParameter(param);
+        }
+    }
+
+    private static class InstrumentedKeyPairGenerator extends KeyPairGeneratorSpi {
+        private final KeyPairGenerator delegate;
+        private final String operation;
+
+        InstrumentedKeyPairGenerator(KeyPairGenerator delegate, String operation) {
+            this.delegate = delegate;
+            this.operation = operation;
+        }
+
+        @Override
+        public void initialize(int keysize, SecureRandom random) {
+            delegate.initialize(keysize, random);
+        }
+
+        @Override
+        public void initialize(AlgorithmParameterSpec params, SecureRandom random) throws InvalidAlgorithmParameterException {
+            delegate.initialize(params, random);
+        }
+
+        @Override
+        public KeyPair generateKeyPair() {
+            final long start = System.nanoTime();
+            final KeyPair keyPair = delegate.generateKeyPair();
+            record(operation, start);
+            return keyPair;
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package net.ripe.rpki.ta;
 
 
+import lombok.extern.slf4j.Slf4j;
 import net.ripe.rpki.commons.crypto.util.KeyStoreException;
 import net.ripe.rpki.commons.crypto.x509cert.X509ResourceCertificate;
 import net.ripe.rpki.commons.crypto.x509cert.X509ResourceCertificateParser;
@@ -17,7 +18,11 @@ import java.security.GeneralSecurityException;
 import java.security.KeyPair;
 import java.security.PrivateKey;
 import java.security.cert.Certificate;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
 
+@Slf4j
 public class KeyStore {
 
     private static final String KEY_STORE_KEY_ALIAS = "RTA2";
@@ -36,6 +41,17 @@ public class KeyStore {
     private final String keyStoreKeyAlias;
     private final char[] keyStorePassPhrase;
 
+    /**
+     * Number of times a key store was loaded in this process. With a HSM every load is a round trip to the module.
+     */
+    private static final AtomicInteger KEY_LOADS = new AtomicInteger();
+
+    /**
+     * The most recently encoded or decoded key store. A TA has one key store at a time, which is decoded several
+     * times in a run, so a single entry is enough.
+     */
+    private static Decoded cached;
+
     private final Config config;
 
     KeyStore(Config config, String keyStoreKeyAlias, char[] keyStorePassPhrase) {
@@ -45,7 +61,9 @@ public class KeyStore {
     }
 
     byte[] encode(final KeyPair keyPair, final X509ResourceCertificate taCertificate) throws IOException, GeneralSecurityException {
-        return encodeKeyStore(createKeyStore(keyPair, taCertificate));
+        final byte[] encoded = encodeKeyStore(createKeyStore(keyPair, taCertificate));
+        cache(new Decoded(encoded, this, ImmutablePair.of(keyPair, taCertificate)));
+        return encoded;
     }
 
     private java.security.KeyStore createKeyStore(final KeyPair keyPair, final X509ResourceCertificate taCertificate) {
@@ -72,21 +90,101 @@ public class KeyStore {
         }
     }
 
+    /**
+     * Decode the key store, or return the result of the previous decode (or encode) of the same bytes in this process.
+     */
     public Pair<KeyPair, X509ResourceCertificate> decode(byte[] encoded) throws IOException, GeneralSecurityException {
+        final Decoded previous = cached();
+        if (previous != null && previous.matches(encoded, this)) {
+            log.debug("Using cached key store, {} key loads in this process", KEY_LOADS.get());
+            return previous.keyPairAndCertificate;
+        }
+        final Pair<KeyPair, X509ResourceCertificate> decoded = load(encoded);
+        log.info("Loaded TA key from {} key store of provider {}, {} key loads in this process",
+                config.getKeystoreType(), config.getKeystoreProvider(), KEY_LOADS.incrementAndGet());
+        cache(new Decoded(encoded, this, decoded));
+        return decoded;
+    }
+
+    /**
+     * Only the TA certificate of the key store, without loading the private key. The certificate of a previous decode
+     * of the same bytes is used when there is one.
+     */
+    public X509ResourceCertificate certificate(byte[] encoded) throws IOException, GeneralSecurityException {
+        final Decoded previous = cached();
+        if (previous != null && previous.matches(encoded, this)) {
+            return previous.keyPairAndCertificate.getRight();
+        }
+        try (final ByteArrayInputStream input = new ByteArrayInputStream(encoded)){
+            return parseCertificate(loadKeyStore(input, keyStorePassPhrase));
+        }
+    }
+
+    private Pair<KeyPair, X509ResourceCertificate> load(byte[] encoded) throws IOException, GeneralSecurityException {
         try (final ByteArrayInputStream input = new ByteArrayInputStream(encoded)){
             final java.security.KeyStore keyStore = loadKeyStore(input, keyStorePassPhrase);
             final PrivateKey privateKey = (PrivateKey) keyStore.getKey(keyStoreKeyAlias, keyStorePassPhrase);
             Validate.notNull(privateKey, "private key is null");
-            final Certificate certificate = keyStore.getCertificateChain(keyStoreKeyAlias)[0];
-            final X509ResourceCertificateParser parser = new X509ResourceCertificateParser();
-            parser.parse("keystore", certificate.getEncoded());
-
-            final X509ResourceCertificate taCertificate = parser.getCertificate();
+            final X509ResourceCertificate taCertificate = parseCertificate(keyStore);
             final KeyPair keyPair = new KeyPair(taCertificate.getPublicKey(), privateKey);
             return ImmutablePair.of(keyPair, taCertificate);
         }
     }
 
+    private X509ResourceCertificate parseCertificate(java.security.KeyStore keyStore) throws GeneralSecurityException {
+        final Certificate certificate = keyStore.getCertificateChain(keyStoreKeyAlias)[0];
+        final X509ResourceCertificateParser parser = new X509ResourceCertificateParser();
+        parser.parse("keystore", certificate.getEncoded());
+        return parser.getCertificate();
+    }
+
+    /**
+     * Forget the decoded key store for these bytes, called when the encoded key store of the state is replaced.
+     */
+    public static synchronized void invalidate(byte[] encoded) {
+        if (cached != null && Arrays.equals(cached.encoded, encoded)) {
+            cached = null;
+        }
+    }
+
+    public static int getKeyLoads() {
+        return KEY_LOADS.get();
+    }
+
+    private static synchronized Decoded cached() {
+        return cached;
+    }
+
+    private static synchronized void cache(Decoded decoded) {
+        cached = decoded;
+    }
+
+    private static class Decoded {
+        private final byte[] encoded;
+        private final String keystoreType;
+        private final String keystoreProvider;
+        private final String keyStoreKeyAlias;
+        private final char[] keyStorePassPhrase;
+        private final Pair<KeyPair, X509ResourceCertificate> keyPairAndCertificate;
+
+        private Decoded(byte[] encoded, KeyStore keyStore, Pair<KeyPair, X509ResourceCertificate> keyPairAndCertificate) {
+            this.encoded = encoded.clone();
+            this.keystoreType = keyStore.config.getKeystoreType();
+            this.keystoreProvider = keyStore.config.getKeystoreProvider();
+            this.keyStoreKeyAlias = keyStore.keyStoreKeyAlias;
+            this.keyStorePassPhrase = keyStore.keyStorePassPhrase.clone();
+            this.keyPairAndCertificate = keyPairAndCertificate;
+        }
+
+        private boolean matches(byte[] encoded, KeyStore keyStore) {
+            return Arrays.equals(this.encoded, encoded)
+                    && Objects.equals(keystoreType, keyStore.config.getKeystoreType())
+                    && Objects.equals(keystoreProvider, keyStore.config.getKeystoreProvider())
+                    && keyStoreKeyAlias.equals(keyStore.keyStoreKeyAlias)
+                    && Arrays.equals(keyStorePassPhrase, keyStore.keyStorePassPhrase);
+        }
+    }
+
     public static KeyStore of(final Config config) {
         return new KeyStore(config, KEY_STORE_KEY_ALIAS, KEY_STORE_PASS_PHRASE);
     }
@@ -7,8 +7,10 @@ import net.ripe.rpki.ta.config.Env;
 import net.ripe.rpki.ta.config.ProgramOptions;
 import net.ripe.rpki.ta.exception.BadOptionsException;
 import net.ripe.rpki.ta.exception.OperationAbortedException;
+import net.ripe.rpki.ta.util.RunReport;
 import org.apache.commons.lang3.StringUtils;
 
+import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.PrintStream;
@@ -30,14 +32,44 @@ public class Main {
     }
 
     public static Exit run(final String... args) {
+        RunReport.start(String.join(" ", args));
+        Config config = null;
+        Exit exit;
         try {
             final ProgramOptions options = new ProgramOptions(args);
-            return run(Env.config(options), options);
+            config = Env.config(options);
+            exit = run(config, options);
         } catch (BadOptionsException e) {
-            return new Exit(EXIT_ERROR_2, e.getMessage() + "\n" + ProgramOptions.getUsageString());
+            exit = new Exit(EXIT_ERROR_2, e.getMessage() + "\n" + ProgramOptions.getUsageString());
         } catch (Exception e) {
             log.error("Exiting due to uncaught exception", e);
-            return Exit.of(e);
+            exit = Exit.of(e);
+        } finally {
+            EeKeyPool.stop();
+        }
+        report(RunReport.finish(exit.exitCode), config);
+        InstrumentedProvider.disable();
+        return exit;
+    }
+
+    /**
+     * Log the summary of the run and write the report to the storage directory, when there is one.
+     */
+    static void report(final RunReport report, final Config config) {
+        if (report == null) {
+            return;
+        }
+        if (InstrumentedProvider.isEnabled()) {
+            report.operations(InstrumentedProvider.drain());
+        }
+        log.info(report.summary());
+        if (config != null && new File(config.getPersistentStorageDir()).isDirectory()) {
+            final File reportFile = new File(config.getPersistentStorageDir(), RunReport.FILENAME);
+            try {
+                report.write(reportFile);
+            } catch (IOException e) {
+                log.warn("Could not write run report to '{}'", reportFile, e);
+            }
         }
     }
 
@@ -46,11 +78,45 @@ public class Main {
 
         log.info("Environment: {}, configuration: {}", options.getEnv(), cliConfig);
 
+        if (options.hasInstrumentProvidersOption()) {
+            InstrumentedProvider.enable();
+        }
+
+        // start generating manifest EE keys while the state is loaded and the request is parsed
+        if (options.getEeKeyPoolSize() > 0) {
+            // only a batch or the daemon takes more than one key pair, replacing them would leave unused keys
+            EeKeyPool.start(cliConfig, options.getEeKeyPoolSize(), options.hasRequestBatchOption() || options.hasDaemonOption());
+        }
+
         if (options.hasInitialiseOption() && TA.hasState(cliConfig)) {
             throw new OperationAbortedException("TA state is already serialised to " + cliConfig.getPersistentStorageDir() + ".");
         }
 
+        final long loadStart = System.nanoTime();
         TA ta = options.hasInitialiseOption() ? TA.initialise(cliConfig) : TA.load(cliConfig);
+        RunReport.phase(options.hasInitialiseOption() ? "initialise" : "state-load", loadStart);
+        try {
+            if (options.hasDaemonOption()) {
+                new Daemon(ta, cliConfig, options).serve();
+                return new Exit(EXIT_OK);
+            }
+
+            execute(ta, options);
+            // a plan does not change the state
+            if (!options.hasPlanOption()) {
+                persist(ta, options);
+                ta.publish(options);
+            }
+            return new Exit(EXIT_OK);
+        } finally {
+            ta.stopSigning();
+        }
+    }
+
+    /**
+     * Execute the operations in the options against the loaded TA, without persisting it.
+     */
+    static void execute(final TA ta, final ProgramOptions options) throws Exception {
         if (options.hasGenerateTACertificateOption()) {
             ta.generateTACertificate();
         }
@@ -61,10 +127,24 @@ public class Main {
             }
         }
 
+        if (options.hasPlanOption()) {
+            final RequestPlan plan = ta.planRequestXml(options);
+            try (PrintStream out = getOutput(options.getPlanFile())) {
+                plan.write(out);
+            }
+            if (!plan.isProcessable()) {
+                throw new OperationAbortedException("The request would not be processed: " + plan.getProblems().get(0));
+            }
+        }
+
         if (options.hasRequestOption() && options.hasResponseOption()) {
             ta.processRequestXml(options);
         }
 
+        if (options.hasRequestBatchOption()) {
+            ta.processRequestBatch(options);
+        }
+
         if (options.hasPrintTALOption()) {
             try (PrintStream out = getOutput(options.getTalFilePath())) {
                 String tal = new String(ta.getCurrentTrustAnchorLocator().getBytes(), StandardCharsets.UTF_8);
@@ -72,8 +152,17 @@ public class Main {
             }
         }
 
-        ta.persist();
-        return new Exit(EXIT_OK);
+        if (options.hasCompactStateOption()) {
+            ta.compactState();
+        }
+    }
+
+    static void persist(final TA ta, final ProgramOptions options) throws Exception {
+        final long start = System.nanoTime();
+        ta.persist(
+                options.hasStateFormatOption() ? options.getStateFormat() : null,
+                options.hasStateJournalOption() ? options.getStateJournal() : null);
+        RunReport.phase("persist", start);
     }
 
     private static PrintStream getOutput(String filename) throws IOException {
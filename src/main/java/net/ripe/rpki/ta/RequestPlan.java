@@ -0,0 +1,89 @@
+package net.ripe.rpki.ta;
+
+
+import net.ripe.rpki.ta.publication.PublishedObjectsDelta.Status;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+
+import java.io.PrintStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The outcome of processing a request as rehearsed by {@link TA#planRequest}: the checks that would abort processing,
+ * the changes to the state and the objects that would be published, by the status they would get in the response.
+ */
+class RequestPlan {
+
+    private final long requestCreationTimestamp;
+    private final List<String> problems = new ArrayList<>();
+    private final List<String> steps = new ArrayList<>();
+    private final Map<URI, Status> publishedObjects = new TreeMap<>();
+
+    RequestPlan(long requestCreationTimestamp) {
+        this.requestCreationTimestamp = requestCreationTimestamp;
+    }
+
+    void problem(String message) {
+        problems.add(message);
+    }
+
+    void step(String message) {
+        steps.add(message);
+    }
+
+    void publish(URI uri, Status status) {
+        publishedObjects.put(uri, status);
+    }
+
+    /**
+     * @return true when processing the request would not be aborted.
+     */
+    boolean isProcessable() {
+        return problems.isEmpty();
+    }
+
+    List<String> getProblems() {
+        return Collections.unmodifiableList(problems);
+    }
+
+    List<String> getSteps() {
+        return Collections.unmodifiableList(steps);
+    }
+
+    Map<URI, Status> getPublishedObjects() {
+        return Collections.unmodifiableMap(publishedObjects);
+    }
+
+    void write(PrintStream out) {
+        out.println("Plan for request created at " + new DateTime(requestCreationTimestamp, DateTimeZone.UTC) + ":");
+        for (final String step : steps) {
+            out.println("  " + step);
+        }
+
+        final Map<Status, Integer> counts = new EnumMap<>(Status.class);
+        for (final Status status : Status.values()) {
+            counts.put(status, 0);
+        }
+        publishedObjects.values().forEach(status -> counts.merge(status, 1, Integer::sum));
+        out.println("Published objects: " + counts.get(Status.ADDED) + " added, " + counts.get(Status.UPDATED) + " updated, "
+                + counts.get(Status.UNCHANGED) + " unchanged, " + counts.get(Status.WITHDRAWN) + " withdrawn");
+        for (final Map.Entry<URI, Status> object : publishedObjects.entrySet()) {
+            out.println("  " + object.getValue().name().toLowerCase(Locale.ROOT) + " " + object.getKey());
+        }
+
+        if (isProcessable()) {
+            out.println("The request would be processed.");
+        } else {
+            for (final String problem : problems) {
+                out.println("The request would NOT be processed: " + problem);
+            }
+        }
+    }
+}
@@ -1,10 +1,15 @@
 package net.ripe.rpki.ta;
 
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
 import com.google.common.base.Verify;
+import com.google.common.hash.HashCode;
 import com.google.common.io.CharStreams;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import lombok.Getter;
+import lombok.Value;
 import lombok.extern.slf4j.Slf4j;
 import net.ripe.ipresource.IpResourceSet;
 import net.ripe.ipresource.IpResourceType;
@@ -24,16 +29,26 @@ import net.ripe.rpki.commons.ta.serializers.TrustAnchorRequestSerializer;
 import net.ripe.rpki.commons.ta.serializers.TrustAnchorResponseSerializer;
 import net.ripe.rpki.ta.config.Config;
 import net.ripe.rpki.ta.config.ProgramOptions;
+import net.ripe.rpki.ta.domain.KeyIdentifierIndex;
+import net.ripe.rpki.ta.domain.Revocation;
+import net.ripe.rpki.ta.domain.StateCompactor;
 import net.ripe.rpki.ta.domain.TAState;
 import net.ripe.rpki.ta.domain.TAStateBuilder;
 import net.ripe.rpki.ta.exception.OperationAbortedException;
 import net.ripe.rpki.ta.exception.RequestProcessorException;
+import net.ripe.rpki.ta.persistence.PersistedState;
 import net.ripe.rpki.ta.persistence.TAPersistence;
-import net.ripe.rpki.ta.serializers.TAStateSerializer;
+import net.ripe.rpki.ta.publication.PublishedObjectsDelta;
+import net.ripe.rpki.ta.publication.RepositoryDirectory;
+import net.ripe.rpki.ta.publication.RrdpRepository;
+import net.ripe.rpki.ta.serializers.Serializers;
+import net.ripe.rpki.ta.serializers.StateFormat;
 import net.ripe.rpki.ta.serializers.legacy.SignedManifest;
 import net.ripe.rpki.ta.serializers.legacy.SignedObjectTracker;
 import net.ripe.rpki.ta.serializers.legacy.SignedResourceCertificate;
+import net.ripe.rpki.ta.util.FileUtil;
 import net.ripe.rpki.ta.util.PublishedObjectsUtil;
+import net.ripe.rpki.ta.util.RunReport;
 import net.ripe.rpki.ta.util.ValidityPeriods;
 import org.apache.commons.lang3.tuple.Pair;
 import org.bouncycastle.asn1.ASN1ObjectIdentifier;
@@ -47,10 +62,15 @@ import java.io.*;
 import java.math.BigInteger;
 import java.net.URI;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.security.GeneralSecurityException;
 import java.security.KeyPair;
-import java.security.PublicKey;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static net.ripe.rpki.commons.crypto.x509cert.X509CertificateInformationAccessDescriptor.*;
 
@@ -63,21 +83,48 @@ public class TA {
     private TAState state;
     private final ValidityPeriods validityPeriods;
 
+    /**
+     * What was last loaded or saved, the journal records the changes relative to it.
+     */
+    private PersistedState persisted;
+
+    /**
+     * The response to the last processed request while its objects are not published yet, they are only published
+     * once the state that signed them is persisted.
+     */
+    private TrustAnchorResponse unpublished;
+
+    /**
+     * The threads that sign certificates in parallel, started by the first request that uses them and kept for the
+     * other requests of the run.
+     */
+    private ExecutorService signingExecutor;
+    private int signingThreads;
+
     public static TA initialise(Config config) throws GeneralSecurityException, IOException {
         final KeyPairFactory keyPairFactory = new KeyPairFactory(config.getKeystoreProvider());
-        final KeyPair rootKeyPair = keyPairFactory.withProvider(config.getKeypairGeneratorProvider()).generate();
+        final KeyPair rootKeyPair = keyPairFactory.withProvider(InstrumentedProvider.wrap(config.getKeypairGeneratorProvider())).generate();
         final TAState state = createTaState(config, rootKeyPair);
         return new TA(state);
     }
 
     public static TA load(Config config) throws IOException {
-        final String xml = new TAPersistence(config).load();
-        final TAState state = new TAStateSerializer().deserialize(xml);
-        return new TA(state);
+        final Pair<TAState, PersistedState> loaded = new TAPersistence(config).load();
+        final TAState state = loaded.getLeft();
+        final int migrated = StateCompactor.replaceRevokedManifests(state);
+        if (migrated > 0) {
+            log.info("Replaced {} revoked manifests by revocations", migrated);
+        }
+        return new TA(state, loaded.getRight());
     }
 
     private TA(TAState state) {
+        this(state, null);
+    }
+
+    private TA(TAState state, PersistedState persisted) {
         this.state = state;
+        this.persisted = persisted;
         this.validityPeriods = new ValidityPeriods(state.getConfig());
     }
 
@@ -86,7 +133,7 @@ public class TA {
         final X509CertificateInformationAccessDescriptor[] descriptors = generateSiaDescriptors(config);
         final KeyStore keyStore = KeyStore.of(config);
         final X509ResourceCertificate rootCert = issueRootCertificate(
-                config, keyPair, descriptors, BigInteger.ONE, config.getSignatureProvider());
+                config, keyPair, descriptors, BigInteger.ONE, InstrumentedProvider.wrap(config.getSignatureProvider()));
         final byte[] encoded = keyStore.encode(keyPair, rootCert);
 
         return createTaState(taStateBuilder, encoded, keyStore, BigInteger.ONE);
@@ -106,11 +153,26 @@ public class TA {
     }
 
     public String serialize() {
-        return new TAStateSerializer().serialize(state);
+        return Serializers.taState().serialize(state);
     }
 
     public void persist() throws IOException {
-        new TAPersistence(state.getConfig()).save(serialize());
+        persist(null, null);
+    }
+
+    public void persist(StateFormat format) throws IOException {
+        persist(format, null);
+    }
+
+    /**
+     * @param format  the format to store the state in, null to keep the current format
+     * @param journal whether to journal changes, null to keep the current setting
+     */
+    public void persist(StateFormat format, Boolean journal) throws IOException {
+        final TAPersistence persistence = new TAPersistence(state.getConfig());
+        this.persisted = persistence.save(state, persisted,
+                format == null ? persistence.getFormat() : format,
+                journal == null ? persistence.isJournalEnabled() : journal);
     }
 
     byte[] getCertificateDER() throws Exception {
@@ -248,78 +310,324 @@ public class TA {
         this.state = createTaState(taStateBuilder, keyStore.encode(keyPair, newTACertificate), keyStore, nextSerial);
     }
 
+    /**
+     * Drop all objects from the state that are expired and revoked.
+     */
+    public StateCompactor.Result compactState() {
+        return StateCompactor.compact(state);
+    }
+
     void processRequestXml(ProgramOptions options) throws Exception {
-        try (InputStream in = requestXml(options.getRequestFile());
-             PrintStream out = responseXml(options.getResponseFile())) {
-            final String requestXml = CharStreams.toString(new InputStreamReader(in, StandardCharsets.UTF_8));
-            final TrustAnchorRequest request = new TrustAnchorRequestSerializer().deserialize(requestXml);
-            final Pair<TrustAnchorResponse, TAState> p = processRequest(request, options);
-            final String response = new TrustAnchorResponseSerializer().serialize(p.getLeft());
-            this.state = p.getRight();
-            out.print(response);
+        final long parseStart = System.nanoTime();
+        final String requestXml = readRequestXml(options.getRequestFile());
+        final TrustAnchorRequest request = Serializers.trustAnchorRequest().deserialize(requestXml);
+        RunReport.phase("request-parse", parseStart);
+        RunReport.bytes("request", requestXml.length());
+
+        final Map<URI, HashCode> previouslyPublished = options.hasDeltaResponseOption() ? publishedObjectHashes() : null;
+        final Pair<TrustAnchorResponse, TAState> p = processRequest(request, options);
+
+        final long serializeStart = System.nanoTime();
+        writeResponseXml(options.getResponseFile(), Serializers.trustAnchorResponse().serialize(p.getLeft()));
+        RunReport.phase("response-serialization", serializeStart);
+        if (previouslyPublished != null) {
+            writeDeltaResponse(options.getResponseFile(), previouslyPublished, p.getLeft());
         }
+        this.state = p.getRight();
+        this.unpublished = p.getLeft();
     }
 
-    private InputStream requestXml(String file) throws IOException {
+    /**
+     * Process a batch of request files against the in-memory state, in the order of their creation timestamps, with
+     * the same checks as processing them one by one. The responses are written when all requests are processed, the
+     * caller persists the resulting state once.
+     */
+    void processRequestBatch(ProgramOptions options) throws Exception {
+        final File responseDirectory = new File(options.getResponseDirectory());
+        if (!responseDirectory.isDirectory()) {
+            throw new OperationAbortedException("Response directory '" + responseDirectory + "' does not exist.");
+        }
+
+        final TrustAnchorRequestSerializer requestSerializer = Serializers.trustAnchorRequest();
+        final List<Pair<File, TrustAnchorRequest>> requests = new ArrayList<>();
+        for (final File file : requestBatchFiles(options.getRequestBatch())) {
+            if (new File(responseDirectory, file.getName()).getCanonicalFile().equals(file.getCanonicalFile())) {
+                throw new OperationAbortedException("The response for '" + file + "' would overwrite the request, use another response directory.");
+            }
+            final long parseStart = System.nanoTime();
+            final String requestXml = readRequestXml(file.getPath());
+            requests.add(Pair.of(file, requestSerializer.deserialize(requestXml)));
+            RunReport.phase("request-parse", parseStart);
+            RunReport.bytes("request", requestXml.length());
+        }
+        requests.sort(Comparator.comparingLong((Pair<File, TrustAnchorRequest> r) -> r.getRight().getCreationTimestamp()));
+
+        final TAState initialState = state;
+        final List<Pair<File, TrustAnchorResponse>> responses = new ArrayList<>();
+        final List<Map<URI, HashCode>> previouslyPublished = new ArrayList<>();
+        try {
+            TrustAnchorRequest previous = null;
+            for (final Pair<File, TrustAnchorRequest> request : requests) {
+                log.info("Processing request {} of {}: {}", responses.size() + 1, requests.size(), request.getLeft());
+                if (previous != null) {
+                    validateRequestSerial(request.getRight(), previous.getCreationTimestamp());
+                }
+                if (options.hasDeltaResponseOption()) {
+                    previouslyPublished.add(publishedObjectHashes());
+                }
+                final Pair<TrustAnchorResponse, TAState> p = processRequest(request.getRight(), options);
+                this.state = p.getRight();
+                responses.add(Pair.of(request.getLeft(), p.getLeft()));
+                previous = request.getRight();
+            }
+        } catch (Exception e) {
+            this.state = initialState;
+            throw e;
+        }
+
+        final TrustAnchorResponseSerializer responseSerializer = Serializers.trustAnchorResponse();
+        for (int i = 0; i < responses.size(); i++) {
+            final Pair<File, TrustAnchorResponse> response = responses.get(i);
+            final String responseFile = new File(responseDirectory, response.getLeft().getName()).getPath();
+            final long serializeStart = System.nanoTime();
+            writeResponseXml(responseFile, responseSerializer.serialize(response.getRight()));
+            RunReport.phase("response-serialization", serializeStart);
+            if (options.hasDeltaResponseOption()) {
+                writeDeltaResponse(responseFile, previouslyPublished.get(i), response.getRight());
+            }
+        }
+        // the objects of the last response replace those of the earlier ones
+        if (!responses.isEmpty()) {
+            this.unpublished = responses.get(responses.size() - 1).getRight();
+        }
+    }
+
+    /**
+     * Write the published objects of the last processed request to the repository directory and as RRDP files, when
+     * requested. Called after the state is persisted, so the repository never has objects of a state that was not
+     * saved.
+     */
+    void publish(ProgramOptions options) throws IOException {
+        if (unpublished == null) {
+            return;
+        }
+        if (options.hasPublishToOption()) {
+            final long start = System.nanoTime();
+            final RepositoryDirectory.Result result = new RepositoryDirectory(new File(options.getPublishDirectory()))
+                    .publish(unpublished.getPublishedObjects());
+            RunReport.phase("publish", start);
+            RunReport.bytes("published", result.getBytesWritten());
+            log.info("Published objects to '{}': {}", options.getPublishDirectory(), result);
+        }
+        if (options.hasRrdpDirectoryOption()) {
+            final long start = System.nanoTime();
+            final RrdpRepository.Result result = new RrdpRepository(new File(options.getRrdpDirectory()))
+                    .publish(state.getConfig().getNotificationUri(), unpublished.getPublishedObjects());
+            RunReport.phase("rrdp", start);
+            log.info("Wrote RRDP files to '{}': {}", options.getRrdpDirectory(), result);
+        }
+        unpublished = null;
+    }
+
+    /**
+     * The sha256 of the objects that the response to the last processed request published, by URI: the TA
+     * certificate, the CRL, the current manifest and the publishable certificates of the state. These are kept in the
+     * state; they are only derived from the state (which decodes the key store for the TA certificate) before the first
+     * request and for states written by older versions.
+     */
+    Map<URI, HashCode> publishedObjectHashes() throws Exception {
+        if (state.getPublishedObjectHashes() != null) {
+            final Map<URI, HashCode> result = new HashMap<>();
+            state.getPublishedObjectHashes().forEach((uri, sha256) -> result.put(URI.create(uri), HashCode.fromString(sha256)));
+            return result;
+        }
+        final Config config = state.getConfig();
+        final X509ResourceCertificate taCertificate = getTaCertificate();
+        final X500Principal subject = taCertificate.getSubject();
+        final URI taProductsPublicationUri = config.getTaProductsPublicationUri();
+
+        final Map<URI, HashCode> result = new HashMap<>();
+        result.put(config.getTaCertificatePublicationUri().resolve(TaNames.certificateFileName(subject)),
+                PublishedObjectsDelta.sha256(taCertificate.getEncoded()));
+        if (state.getCrl() != null) {
+            result.put(TaNames.crlPublicationUri(taProductsPublicationUri, subject), PublishedObjectsDelta.sha256(state.getCrl().getEncoded()));
+        }
+        for (final SignedManifest manifest : state.getSignedManifests()) {
+            if (!manifest.isRevoked()) {
+                result.put(TaNames.manifestPublicationUri(taProductsPublicationUri, subject), PublishedObjectsDelta.sha256(manifest.getEncoded()));
+            }
+        }
+        for (final SignedResourceCertificate certificate : state.getSignedProductionCertificates()) {
+            if (certificate.isPublishable()) {
+                result.put(taProductsPublicationUri.resolve(certificate.getFileName()), HashCode.fromBytes(certificate.getSha256()));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Write the published objects of the response relative to what was published before, next to the response.
+     */
+    private static void writeDeltaResponse(String responseFile, Map<URI, HashCode> previouslyPublished, TrustAnchorResponse response) throws IOException {
+        final long start = System.nanoTime();
+        final PublishedObjectsDelta delta = PublishedObjectsDelta.between(previouslyPublished, response.getPublishedObjects());
+        final File deltaFile = deltaResponseFile(responseFile);
+        FileUtil.writeAtomically(deltaFile, out -> delta.write(response.getRequestCreationTimestamp(), out));
+        RunReport.phase("delta-response", start);
+        RunReport.bytes("delta-response", deltaFile.length());
+        for (final PublishedObjectsDelta.Status status : PublishedObjectsDelta.Status.values()) {
+            RunReport.count("published-" + status.name().toLowerCase(Locale.ROOT), delta.count(status));
+        }
+        log.info("Wrote delta of the published objects to {}: {}", deltaFile, delta.summary());
+    }
+
+    /**
+     * The delta for response.xml is written to response.delta.xml.
+     */
+    static File deltaResponseFile(String responseFile) {
+        return new File(responseFile.endsWith(".xml")
+                ? responseFile.substring(0, responseFile.length() - ".xml".length()) + ".delta.xml"
+                : responseFile + ".delta.xml");
+    }
+
+    /**
+     * @param requestBatch a directory with request files (*.xml) or a comma separated list of request files
+     */
+    private static List<File> requestBatchFiles(String requestBatch) throws OperationAbortedException {
+        final File directory = new File(requestBatch);
+        if (directory.isDirectory()) {
+            final File[] files = directory.listFiles((dir, name) -> name.endsWith(".xml"));
+            if (files == null || files.length == 0) {
+                throw new OperationAbortedException("No request files (*.xml) in '" + directory + "'.");
+            }
+            Arrays.sort(files);
+            return Arrays.asList(files);
+        }
+        final List<File> files = new ArrayList<>();
+        for (final String name : requestBatch.split(",")) {
+            final File file = new File(name.trim());
+            if (!file.isFile()) {
+                throw new OperationAbortedException("Request file '" + file + "' does not exist.");
+            }
+            files.add(file);
+        }
+        return files;
+    }
+
+    /**
+     * The request XML from the file, or from stdin for "-". The rpki-commons serializers parse from a String, so the
+     * file is decoded into one directly, without intermediate buffers.
+     */
+    private static String readRequestXml(String file) throws IOException {
         log.info("reading request XML from {}", file);
         if ("-".equals(file)) {
-            return System.in;
+            return CharStreams.toString(new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8)));
         } else {
-            return new FileInputStream(file);
+            return Files.readString(Path.of(file), StandardCharsets.UTF_8);
         }
     }
 
-    private PrintStream responseXml(String file) throws IOException {
+    /**
+     * Write the response XML through a buffer to stdout for "-", or otherwise to a temporary file that replaces the
+     * response file once it is complete.
+     */
+    private static void writeResponseXml(String file, String responseXml) throws IOException {
         log.info("writing response XML to {}", file);
         if ("-".equals(file)) {
-            return System.out;
+            final Writer out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+            out.write(responseXml);
+            out.flush();
         } else {
-            return new PrintStream(new FileOutputStream(file));
+            FileUtil.writeAtomically(new File(file), out -> out.write(responseXml));
         }
+        RunReport.bytes("response", responseXml.length());
     }
 
-    private Pair<TrustAnchorResponse, TAState> processRequest(final TrustAnchorRequest request, ProgramOptions options) throws Exception {
-        validateRequestSerial(request, state);
+    @VisibleForTesting
+    Pair<TrustAnchorResponse, TAState> processRequest(final TrustAnchorRequest request, ProgramOptions options) throws Exception {
+        final Processing processing = new Processing();
+        final SignCtx signCtx = processRequest(request, options, processing);
+        RunReport.count("tracked-objects", signCtx.taState.getSignedProductionCertificates().size()
+                + signCtx.taState.getSignedManifests().size() + signCtx.taState.getRevocations().size());
 
-        final KeyStore keyStore = KeyStore.of(state.getConfig());
-        final Pair<KeyPair, X509ResourceCertificate> decoded = keyStore.decode(state.getEncoded());
-        TAState newTAState = copyTAState(state);
+        return Pair.of(new TrustAnchorResponse(request.getCreationTimestamp(), processing.publishedObjects, processing.taResponses), signCtx.taState);
+    }
+
+    /**
+     * Read the request file and rehearse processing it, see {@link #planRequest(TrustAnchorRequest, ProgramOptions)}.
+     */
+    RequestPlan planRequestXml(ProgramOptions options) throws Exception {
+        final long parseStart = System.nanoTime();
+        final String requestXml = readRequestXml(options.getRequestFile());
+        final TrustAnchorRequest request = Serializers.trustAnchorRequest().deserialize(requestXml);
+        RunReport.phase("request-parse", parseStart);
+        RunReport.bytes("request", requestXml.length());
+
+        final long planStart = System.nanoTime();
+        final RequestPlan plan = planRequest(request, options);
+        RunReport.phase("plan", planStart);
+        return plan;
+    }
+
+    /**
+     * Rehearse {@link #processRequest} against a copy of the state: the same checks, revocations and decision to
+     * re-issue the TA certificate, and the objects that would be published. The private key is not loaded and nothing
+     * is signed, so no new keys or serials are used, and the state of the TA does not change.
+     */
+    @VisibleForTesting
+    RequestPlan planRequest(final TrustAnchorRequest request, ProgramOptions options) throws Exception {
+        final Planning planning = new Planning(new RequestPlan(request.getCreationTimestamp()));
+        processRequest(request, options, planning);
+        return planning.plan;
+    }
 
-        SignCtx signCtx = new SignCtx(request, newTAState, decoded.getRight(), decoded.getLeft());
+    /**
+     * Process the request against a copy of the state. The checks and the changes to the state are the same for
+     * processing and rehearsing a request, the steps decide what is signed and what is recorded.
+     *
+     * @return the context of the new state.
+     */
+    private SignCtx processRequest(final TrustAnchorRequest request, final ProgramOptions options, final RequestSteps steps) throws Exception {
+        try {
+            validateRequestSerial(request, state);
+        } catch (RequestProcessorException e) {
+            steps.reject(e);
+        }
+
+        final TAState newTAState = state.copy();
+        if (StateCompactor.shouldCompact(newTAState)) {
+            steps.step("Compact " + StateCompactor.countCompactable(newTAState) + " expired and revoked objects from the state");
+            StateCompactor.compact(newTAState);
+        }
+
+        SignCtx signCtx = steps.signContext(request, newTAState);
 
         // First process revocation requests, before processing the "revoke all issued resource certificates" command
         // line option. Otherwise, error responses are generated due to requesting a revocation for an already revoked
         // certificate.
-        final List<TaResponse> taResponses = new ArrayList<>();
+        final long revocationStart = System.nanoTime();
+        int revocationRequests = 0;
         for (final TaRequest r : request.getTaRequests()) {
             if (r instanceof RevocationRequest) {
-                taResponses.add(processRevocationRequest((RevocationRequest) r, signCtx));
+                final RevocationRequest revocationRequest = (RevocationRequest) r;
+                steps.revocation(revocationRequest, signCtx.certificatesByKey.revoke(revocationRequest.getEncodedPublicKey(), ValidityPeriods.now()));
+                revocationRequests++;
             }
         }
+        RunReport.count("revocation-requests", revocationRequests);
 
         // If requested, revoke all the currently issued resource certificates that are present in the state.
         if (options.hasRevokeAllIssuedResourceCertificates()) {
-            revokeAllIssuedResourceCertificates(newTAState);
+            final long live = signCtx.taState.getSignedProductionCertificates().stream().filter(c -> !c.isRevoked()).count();
+            revokeAllIssuedResourceCertificates(signCtx.taState);
+            steps.step("Revoke all " + live + " remaining issued resource certificates");
         }
+        RunReport.phase("revocations", revocationStart);
 
         final Optional<String> differentLocations = locationsAreDifferent(request, signCtx.taState.getConfig());
-
-        // If the TA certificate publication point or the notification.xml URL has changed,
-        // we need to re-issue the TA certificate, but we don't want to do it implicitly,
-        // so we require the --force-new-ta-certificate option to be provided.
-        if (differentLocations.isPresent() && !options.hasForceNewTaCertificate()) {
-            throw new OperationAbortedException("The TA certificate has to be re-issued: " + differentLocations.get() +
-                    ", bailing out. Provide " + ProgramOptions.FORCE_NEW_TA_CERT_OPT + " option to force TA certificate re-issue.");
-        }
-
-        var expiresAt = signCtx.taCertificate.getValidityPeriod().getNotValidAfter();
-        boolean taCertCloseToExpiration = expiresAt.isBefore(ValidityPeriods.now().plus(signCtx.taState.getConfig().getMinimumValidityPeriod()));
-
-        // The same comes to the TA certificate being close to expiration: require --force-new-ta-certificate
-        // option to be provided and when it is provided re-issue the certificate.
-        if (taCertCloseToExpiration && !options.hasForceNewTaCertificate()) {
-            throw new OperationAbortedException("The TA certificate is about to expire, please re-run with " +
-                    ProgramOptions.FORCE_NEW_TA_CERT_OPT + " option to re-issue the TA certificate.");
+        final Optional<String> reIssueNotForced = reIssueNotForced(differentLocations, signCtx.taCertificate, signCtx.taState.getConfig(), options);
+        if (reIssueNotForced.isPresent()) {
+            steps.reject(new OperationAbortedException(reIssueNotForced.get()));
         }
 
         // There are two cases when we will re-issue the TA certificate:
@@ -327,36 +635,295 @@ public class TA {
         // 2. The TA certificate publication point or the notification.xml URL has changed
         if (options.hasForceNewTaCertificate() || differentLocations.isPresent()) {
             if (differentLocations.isPresent()) {
-                updateTaConfigUrls(request, signCtx);
+                updateTaConfigUrls(request, signCtx.taState.getConfig());
+            }
+            steps.step("Re-issue the TA certificate" + differentLocations.map(reason -> ": " + reason).orElse(""));
+            signCtx = steps.reIssue(signCtx);
+        }
+
+        // Process sign requests _after_ revoking all issued certificates (command line option), to avoid immediately
+        // revoking the certificates that we just issued...
+        final List<SigningRequest> signingRequests = new ArrayList<>();
+        final List<BigInteger> serials = new ArrayList<>();
+        for (final TaRequest r : request.getTaRequests()) {
+            if (r instanceof SigningRequest) {
+                signingRequests.add((SigningRequest) r);
+                serials.add(nextIssuedCertSerial(signCtx.taState));
+            }
+        }
+        final List<IssuedCertificate> certificates = steps.sign(signingRequests, serials, signCtx, options.getSigningThreads());
+        // the certificates are handled in request order, a later request for the same key revokes an earlier one
+        for (int i = 0; i < signingRequests.size(); i++) {
+            final IssuedCertificate certificate = certificates.get(i);
+            final boolean replaces = signCtx.certificatesByKey.revoke(certificate.getKeyIdentifier(), ValidityPeriods.now());
+            steps.signed(signingRequests.get(i), certificate, replaces, signCtx);
+        }
+        RunReport.count("signing-requests", signingRequests.size());
+
+        steps.publish(signCtx);
+        return signCtx;
+    }
+
+    /**
+     * The steps of {@link #processRequest(TrustAnchorRequest, ProgramOptions, RequestSteps)} that differ between
+     * processing a request, which signs, and rehearsing it, which records what would be done.
+     */
+    private interface RequestSteps {
+        /**
+         * A check failed: processing is aborted, a plan records the problem and continues.
+         */
+        void reject(Exception problem) throws Exception;
+
+        /**
+         * A change to the state that is not visible in the response.
+         */
+        void step(String description);
+
+        SignCtx signContext(TrustAnchorRequest request, TAState taState) throws Exception;
+
+        void revocation(RevocationRequest revocationRequest, boolean revoked);
+
+        /**
+         * @return the context with the re-issued TA certificate.
+         */
+        SignCtx reIssue(SignCtx signCtx) throws Exception;
+
+        /**
+         * @return the certificates for the requests with the given serials, in request order.
+         */
+        List<IssuedCertificate> sign(List<SigningRequest> signingRequests, List<BigInteger> serials, SignCtx signCtx, int threads) throws Exception;
+
+        /**
+         * @param replaces whether a live certificate for the same key was revoked for it.
+         */
+        void signed(SigningRequest signingRequest, IssuedCertificate certificate, boolean replaces, SignCtx signCtx);
+
+        void publish(SignCtx signCtx);
+    }
+
+    /**
+     * A certificate for a signing request. A plan only knows its file name, serial and key, the tracker is only there
+     * when the certificate is signed.
+     */
+    @Value
+    private static class IssuedCertificate {
+        String fileName;
+        BigInteger serial;
+        String keyIdentifier;
+        SignedResourceCertificate tracker;
+    }
+
+    /**
+     * Sign the objects for the request with the TA key, collecting the response.
+     */
+    private class Processing implements RequestSteps {
+        private final List<TaResponse> taResponses = new ArrayList<>();
+        private Map<URI, CertificateRepositoryObject> publishedObjects;
+
+        @Override
+        public void reject(Exception problem) throws Exception {
+            throw problem;
+        }
+
+        @Override
+        public void step(String description) {
+            log.info(description);
+        }
+
+        @Override
+        public SignCtx signContext(TrustAnchorRequest request, TAState taState) throws Exception {
+            final long decodeStart = System.nanoTime();
+            final Pair<KeyPair, X509ResourceCertificate> decoded = KeyStore.of(state.getConfig()).decode(state.getEncoded());
+            RunReport.phase("keystore-decode", decodeStart);
+            return new SignCtx(request, taState, decoded.getRight(), decoded.getLeft());
+        }
+
+        @Override
+        public void revocation(RevocationRequest revocationRequest, boolean revoked) {
+            if (revoked) {
+                taResponses.add(new RevocationResponse(revocationRequest.getRequestId(), revocationRequest.getResourceClassName(), revocationRequest.getEncodedPublicKey()));
+            } else {
+                taResponses.add(new ErrorResponse(revocationRequest.getRequestId(), "No certificate to revoke for this encoded public key"));
             }
-            final KeyPair keyPair = decoded.getLeft();
-            final X509ResourceCertificate taCertificate = decoded.getRight();
-            final BigInteger nextSerial = nextIssuedCertSerial(state);
+        }
+
+        @Override
+        public SignCtx reIssue(SignCtx signCtx) throws Exception {
+            final KeyStore keyStore = KeyStore.of(state.getConfig());
+            // the serial is taken from the copy of the state, a rejected batch restores the state it started with
+            final BigInteger nextSerial = nextIssuedCertSerial(signCtx.taState);
 
             X509CertificateInformationAccessDescriptor[] ta0SiaDescriptors = generateSiaDescriptors(
                     signCtx.taState.getConfig()
             );
-            final X509ResourceCertificate newTACertificate = reIssueRootCertificate(keyPair,
-                    merge(ta0SiaDescriptors, request.getSiaDescriptors()), taCertificate, nextSerial);
+            final X509ResourceCertificate newTACertificate = reIssueRootCertificate(signCtx.keyPair,
+                    merge(ta0SiaDescriptors, signCtx.request.getSiaDescriptors()), signCtx.taCertificate, nextSerial);
 
-            TAStateBuilder taStateBuilder = new TAStateBuilder(newTAState);
-            taStateBuilder.withCrl(newTAState.getCrl());
-            newTAState = createTaState(taStateBuilder, keyStore.encode(keyPair, newTACertificate), keyStore, nextSerial);
-            signCtx = new SignCtx(request, newTAState, newTACertificate, keyPair);
+            TAStateBuilder taStateBuilder = new TAStateBuilder(signCtx.taState);
+            taStateBuilder.withCrl(signCtx.taState.getCrl());
+            final TAState newTAState = createTaState(taStateBuilder, keyStore.encode(signCtx.keyPair, newTACertificate), keyStore, nextSerial);
+            return new SignCtx(signCtx.request, newTAState, newTACertificate, signCtx.keyPair);
         }
 
-        // Process sign requests _after_ revoking all issued certificates (command line option), to avoid immediately
-        // revoking the certificates that we just issued...
-        for (final TaRequest r : request.getTaRequests()) {
-            if (r instanceof SigningRequest) {
-                taResponses.add(processSignRequest((SigningRequest) r, signCtx));
+        @Override
+        public List<IssuedCertificate> sign(List<SigningRequest> signingRequests, List<BigInteger> serials, SignCtx signCtx, int threads) throws Exception {
+            final long signingStart = System.nanoTime();
+            final List<IssuedCertificate> result = new ArrayList<>(signingRequests.size());
+            for (final X509ResourceCertificate certificate : signCertificates(signingRequests, serials, signCtx, threads)) {
+                final SignedResourceCertificate tracker = new SignedResourceCertificate(TaNames.certificateFileName(certificate.getSubject()), certificate);
+                result.add(new IssuedCertificate(tracker.getFileName(), tracker.getCertificateSerial(), tracker.getKeyIdentifier(), tracker));
             }
+            RunReport.phase("signing", signingStart);
+            return result;
         }
 
-        Map<URI, CertificateRepositoryObject> publishedObjects = updateObjectsToBePublished(signCtx);
-        PublishedObjectsUtil.logPublishedObjects(publishedObjects);
+        @Override
+        public void signed(SigningRequest signingRequest, IssuedCertificate certificate, boolean replaces, SignCtx signCtx) {
+            signCtx.certificatesByKey.add(certificate.getTracker());
+            final X509ResourceCertificate allResourcesCertificate = certificate.getTracker().getResourceCertificate();
+            final URI publicationPoint = TaNames.certificatePublicationUri(
+                signCtx.taState.getConfig().getTaProductsPublicationUri(), allResourcesCertificate.getSubject());
+            taResponses.add(new SigningResponse(signingRequest.getRequestId(),
+                    signingRequest.getResourceCertificateRequest().getResourceClassName(), publicationPoint, allResourcesCertificate));
+        }
+
+        @Override
+        public void publish(SignCtx signCtx) {
+            publishedObjects = updateObjectsToBePublished(signCtx);
+            PublishedObjectsUtil.logPublishedObjects(publishedObjects);
+            RunReport.count("published-objects", publishedObjects.size());
+        }
+    }
+
+    /**
+     * Record what processing the request would do, with the TA certificate of the state and without its key.
+     */
+    private class Planning implements RequestSteps {
+        private final RequestPlan plan;
+        /**
+         * Publication URIs of the certificates that would be signed, by key: a later request for the same key replaces
+         * the certificate of an earlier one.
+         */
+        private final Map<String, URI> signed = new HashMap<>();
+        private boolean reIssued;
+
+        private Planning(RequestPlan plan) {
+            this.plan = plan;
+        }
+
+        @Override
+        public void reject(Exception problem) {
+            plan.problem(problem.getMessage());
+        }
+
+        @Override
+        public void step(String description) {
+            plan.step(description);
+        }
+
+        @Override
+        public SignCtx signContext(TrustAnchorRequest request, TAState taState) throws Exception {
+            return new SignCtx(request, taState, KeyStore.of(state.getConfig()).certificate(state.getEncoded()), null);
+        }
+
+        @Override
+        public void revocation(RevocationRequest revocationRequest, boolean revoked) {
+            if (revoked) {
+                plan.step("Revoke the certificate of resource class " + revocationRequest.getResourceClassName() +
+                        " for key " + revocationRequest.getEncodedPublicKey());
+            } else {
+                plan.step("Respond with an error to the revocation for key " + revocationRequest.getEncodedPublicKey() +
+                        ": there is no certificate to revoke");
+            }
+        }
+
+        @Override
+        public SignCtx reIssue(SignCtx signCtx) {
+            reIssued = true;
+            return new SignCtx(signCtx.request, signCtx.taState, signCtx.taCertificate, null);
+        }
 
-        return Pair.of(new TrustAnchorResponse(request.getCreationTimestamp(), publishedObjects, taResponses), newTAState);
+        /**
+         * The file name, serial and key of the certificates that would be signed, taken from the requests.
+         */
+        @Override
+        public List<IssuedCertificate> sign(List<SigningRequest> signingRequests, List<BigInteger> serials, SignCtx signCtx, int threads) {
+            final List<IssuedCertificate> result = new ArrayList<>(signingRequests.size());
+            for (int i = 0; i < signingRequests.size(); i++) {
+                final ResourceCertificateRequestData requestData = signingRequests.get(i).getResourceCertificateRequest();
+                result.add(new IssuedCertificate(TaNames.certificateFileName(requestData.getSubjectDN()), serials.get(i),
+                        KeyPairUtil.getEncodedKeyIdentifier(new EncodedPublicKey(requestData.getEncodedSubjectPublicKey())), null));
+            }
+            return result;
+        }
+
+        /**
+         * The certificates that would be signed are not added to the state, so a certificate of an earlier request for
+         * the same key is replaced here.
+         */
+        @Override
+        public void signed(SigningRequest signingRequest, IssuedCertificate certificate, boolean replaces, SignCtx signCtx) {
+            final URI publicationUri = signCtx.taState.getConfig().getTaProductsPublicationUri().resolve(certificate.getFileName());
+            final boolean replacesPlanned = signed.put(certificate.getKeyIdentifier(), publicationUri) != null;
+            plan.step("Sign a certificate of resource class " + signingRequest.getResourceCertificateRequest().getResourceClassName() +
+                    " at " + publicationUri + (replaces || replacesPlanned ? ", revoking the current certificate for key " + certificate.getKeyIdentifier() : ""));
+        }
+
+        /**
+         * The CRL and manifest are signed for every request, the other certificates of the state are published as they
+         * are.
+         */
+        @Override
+        public void publish(SignCtx signCtx) {
+            final X500Principal subject = signCtx.taCertificate.getSubject();
+            final URI taProductsPublicationUri = signCtx.taState.getConfig().getTaProductsPublicationUri();
+            final Set<URI> previouslyPublished = publishedObjectUris(state, subject);
+            final Map<URI, PublishedObjectsDelta.Status> published = new HashMap<>();
+            published.put(signCtx.taState.getConfig().getTaCertificatePublicationUri().resolve(TaNames.certificateFileName(subject)),
+                    reIssued ? PublishedObjectsDelta.Status.UPDATED : PublishedObjectsDelta.Status.UNCHANGED);
+            published.put(TaNames.crlPublicationUri(taProductsPublicationUri, subject), PublishedObjectsDelta.Status.UPDATED);
+            published.put(TaNames.manifestPublicationUri(taProductsPublicationUri, subject), PublishedObjectsDelta.Status.UPDATED);
+            for (final SignedResourceCertificate certificate : signCtx.taState.getSignedProductionCertificates()) {
+                if (certificate.isPublishable()) {
+                    published.put(taProductsPublicationUri.resolve(certificate.getFileName()), PublishedObjectsDelta.Status.UNCHANGED);
+                }
+            }
+            for (final URI uri : signed.values()) {
+                published.put(uri, PublishedObjectsDelta.Status.UPDATED);
+            }
+            for (final Map.Entry<URI, PublishedObjectsDelta.Status> object : published.entrySet()) {
+                plan.publish(object.getKey(), previouslyPublished.contains(object.getKey()) ? object.getValue() : PublishedObjectsDelta.Status.ADDED);
+            }
+            for (final URI uri : previouslyPublished) {
+                if (!published.containsKey(uri)) {
+                    plan.publish(uri, PublishedObjectsDelta.Status.WITHDRAWN);
+                }
+            }
+        }
+    }
+
+    /**
+     * The URIs of the objects published by the response to the last processed request, like
+     * {@link #publishedObjectHashes()} without their content.
+     */
+    private static Set<URI> publishedObjectUris(final TAState taState, final X500Principal subject) {
+        final Config config = taState.getConfig();
+        final URI taProductsPublicationUri = config.getTaProductsPublicationUri();
+
+        final Set<URI> result = new HashSet<>();
+        result.add(config.getTaCertificatePublicationUri().resolve(TaNames.certificateFileName(subject)));
+        if (taState.getCrl() != null) {
+            result.add(TaNames.crlPublicationUri(taProductsPublicationUri, subject));
+        }
+        if (taState.getSignedManifests().stream().anyMatch(manifest -> !manifest.isRevoked())) {
+            result.add(TaNames.manifestPublicationUri(taProductsPublicationUri, subject));
+        }
+        for (final SignedResourceCertificate certificate : taState.getSignedProductionCertificates()) {
+            if (certificate.isPublishable()) {
+                result.add(taProductsPublicationUri.resolve(certificate.getFileName()));
+            }
+        }
+        return result;
     }
 
     private Optional<String> locationsAreDifferent(TrustAnchorRequest taRequest, Config taConfig) {
@@ -376,19 +943,43 @@ public class TA {
         return Optional.empty();
     }
 
+
     /**
-     * A weird way to make a deep copy of TA state.
-     * There should be a better one, but Java sucks
+     * The reason processing the request has to be aborted when the TA certificate has to be re-issued without the
+     * --force-new-ta-certificate option.
      */
-    private static TAState copyTAState(final TAState ts) {
-        final TAStateSerializer serializer = new TAStateSerializer();
-        return serializer.deserialize(serializer.serialize(ts));
-    }
+    private static Optional<String> reIssueNotForced(final Optional<String> differentLocations, final X509ResourceCertificate taCertificate,
+                                                     final Config config, final ProgramOptions options) {
+        if (options.hasForceNewTaCertificate()) {
+            return Optional.empty();
+        }
+        // If the TA certificate publication point or the notification.xml URL has changed,
+        // we need to re-issue the TA certificate, but we don't want to do it implicitly,
+        // so we require the --force-new-ta-certificate option to be provided.
+        if (differentLocations.isPresent()) {
+            return Optional.of("The TA certificate has to be re-issued: " + differentLocations.get() +
+                    ", bailing out. Provide " + ProgramOptions.FORCE_NEW_TA_CERT_OPT + " option to force TA certificate re-issue.");
+        }
 
+        var expiresAt = taCertificate.getValidityPeriod().getNotValidAfter();
+        boolean taCertCloseToExpiration = expiresAt.isBefore(ValidityPeriods.now().plus(config.getMinimumValidityPeriod()));
+
+        // The same comes to the TA certificate being close to expiration: require --force-new-ta-certificate
+        // option to be provided and when it is provided re-issue the certificate.
+        if (taCertCloseToExpiration) {
+            return Optional.of("The TA certificate is about to expire, please re-run with " +
+                    ProgramOptions.FORCE_NEW_TA_CERT_OPT + " option to re-issue the TA certificate.");
+        }
+        return Optional.empty();
+    }
 
     private void validateRequestSerial(TrustAnchorRequest request, final TAState taState) {
+        validateRequestSerial(request, taState.getLastProcessedRequestTimestamp());
+    }
+
+    private void validateRequestSerial(TrustAnchorRequest request, final long lastProcessedRequestTimestamp) {
         final DateTime requestTime = new DateTime(request.getCreationTimestamp(), DateTimeZone.UTC);
-        final DateTime lastRequestTime = new DateTime(taState.getLastProcessedRequestTimestamp(), DateTimeZone.UTC);
+        final DateTime lastRequestTime = new DateTime(lastProcessedRequestTimestamp, DateTimeZone.UTC);
 
         if (requestTime.isBefore(lastRequestTime)) {
             throw new RequestProcessorException("Request, dated: " + requestTime + ", is BEFORE last processed request, dated: " + lastRequestTime);
@@ -398,72 +989,126 @@ public class TA {
         }
     }
 
-    private void updateTaConfigUrls(final TrustAnchorRequest taRequest, final SignCtx signCtx) {
-        signCtx.taState.getConfig().setTaCertificatePublicationUri(taRequest.getTaCertificatePublicationUri());
+    private void updateTaConfigUrls(final TrustAnchorRequest taRequest, final Config taConfig) {
+        taConfig.setTaCertificatePublicationUri(taRequest.getTaCertificatePublicationUri());
         for (final X509CertificateInformationAccessDescriptor descriptor : taRequest.getSiaDescriptors()) {
             if (ID_AD_CA_REPOSITORY.equals(descriptor.getMethod())) {
-                signCtx.taState.getConfig().setTaProductsPublicationUri(descriptor.getLocation());
+                taConfig.setTaProductsPublicationUri(descriptor.getLocation());
             } else if (ID_AD_RPKI_NOTIFY.equals(descriptor.getMethod())) {
-                signCtx.taState.getConfig().setNotificationUri(descriptor.getLocation());
+                taConfig.setNotificationUri(descriptor.getLocation());
             }
         }
     }
 
-    private TaResponse processSignRequest(final SigningRequest signingRequest, final SignCtx signCtx) {
-        final ResourceCertificateRequestData requestData = signingRequest.getResourceCertificateRequest();
-
-        final X509ResourceCertificate allResourcesCertificate = signAllResourcesCertificate(requestData, signCtx);
-        revokeAllCertificatesForKey(KeyPairUtil.getEncodedKeyIdentifier(allResourcesCertificate.getPublicKey()), signCtx.taState);
-
-        signCtx.taState.getSignedProductionCertificates().add(new SignedResourceCertificate(
-                TaNames.certificateFileName(allResourcesCertificate.getSubject()), allResourcesCertificate));
+    /**
+     * Sign the certificates for the requests with the given serials, in parallel when more than one thread is given and
+     * the TA key is a software key. The result is in request order, so it is the same as signing them one by one.
+     */
+    private List<X509ResourceCertificate> signCertificates(final List<SigningRequest> signingRequests, final List<BigInteger> serials,
+                                                           final SignCtx signCtx, int threads) throws InterruptedException {
+        final List<X509ResourceCertificate> certificates = new ArrayList<>(signingRequests.size());
+        if (threads > 1 && signingRequests.size() > 1 && ProgramOptions.PARALLEL_SIGNATURE_PROVIDERS.contains(state.getConfig().getSignatureProvider())) {
+            final ExecutorService executor = signingExecutor(threads);
+            final List<Future<X509ResourceCertificate>> signed = new ArrayList<>(signingRequests.size());
+            try {
+                for (int i = 0; i < signingRequests.size(); i++) {
+                    final ResourceCertificateRequestData requestData = signingRequests.get(i).getResourceCertificateRequest();
+                    final BigInteger serial = serials.get(i);
+                    signed.add(executor.submit(() -> signAllResourcesCertificate(requestData, serial, signCtx)));
+                }
+                for (final Future<X509ResourceCertificate> certificate : signed) {
+                    try {
+                        certificates.add(certificate.get());
+                    } catch (ExecutionException e) {
+                        Throwables.throwIfUnchecked(e.getCause());
+                        throw new IllegalStateException(e.getCause());
+                    }
+                }
+            } finally {
+                // when a certificate could not be signed, the others are not needed
+                signed.forEach(certificate -> certificate.cancel(true));
+            }
+            log.info("Signed {} certificates using {} threads", certificates.size(), Math.min(threads, signingRequests.size()));
+        } else {
+            if (threads > 1 && signingRequests.size() > 1) {
+                log.info("Signing certificates sequentially with the keys of the {} provider", state.getConfig().getSignatureProvider());
+            }
+            for (int i = 0; i < signingRequests.size(); i++) {
+                certificates.add(signAllResourcesCertificate(signingRequests.get(i).getResourceCertificateRequest(), serials.get(i), signCtx));
+            }
+        }
 
-        final URI publicationPoint = TaNames.certificatePublicationUri(
-            signCtx.taState.getConfig().getTaProductsPublicationUri(), allResourcesCertificate.getSubject());
+        return certificates;
+    }
 
-        return new SigningResponse(signingRequest.getRequestId(), requestData.getResourceClassName(), publicationPoint, allResourcesCertificate);
+    /**
+     * The signing threads of the run, started again when a command of the daemon asks for another number of threads.
+     */
+    private synchronized ExecutorService signingExecutor(int threads) {
+        if (signingExecutor == null || signingThreads != threads) {
+            stopSigning();
+            signingExecutor = Executors.newFixedThreadPool(threads,
+                    new ThreadFactoryBuilder().setNameFormat("signing-%d").setDaemon(true).build());
+            signingThreads = threads;
+        }
+        return signingExecutor;
     }
 
-    private TaResponse processRevocationRequest(final RevocationRequest revocationRequest, final SignCtx signCtx) {
-        boolean revoked = revokeAllCertificatesForKey(revocationRequest.getEncodedPublicKey(),  signCtx.taState);
-        if (revoked) {
-            return new RevocationResponse(revocationRequest.getRequestId(), revocationRequest.getResourceClassName(), revocationRequest.getEncodedPublicKey());
-        } else {
-            return new ErrorResponse(revocationRequest.getRequestId(), "No certificate to revoke for this encoded public key");
+    /**
+     * Stop the signing threads at the end of the run.
+     */
+    synchronized void stopSigning() {
+        if (signingExecutor != null) {
+            signingExecutor.shutdownNow();
+            signingExecutor = null;
         }
     }
 
     private Map<URI, CertificateRepositoryObject> updateObjectsToBePublished(final SignCtx signCtx) {
         final Config config = signCtx.taState.getConfig();
-        // Revoke currently issued manifests
-        for (final SignedManifest signedManifest : signCtx.taState.getSignedManifests()) {
-            signedManifest.revoke();
-        }
+        // Revoke currently issued manifests, only their CRL entry needs to be kept
+        signCtx.taState.getSignedManifests().replaceAll(manifest -> manifest.revoked(ValidityPeriods.now()));
+        StateCompactor.replaceRevokedManifests(signCtx.taState);
         final URI taProductsPublicationUri = config.getTaProductsPublicationUri();
         final URI taCertificatePublicationUri = config.getTaCertificatePublicationUri();
 
         final Map<URI, CertificateRepositoryObject> result = new HashMap<>();
-        result.put(taCertificatePublicationUri.resolve(TaNames.certificateFileName(signCtx.taCertificate.getSubject())), signCtx.taCertificate);
+        // the hashes are kept in the state, so the next --delta-response does not need the key store or to hash again
+        final Map<String, String> hashes = new TreeMap<>();
+        final URI taCertificateUri = taCertificatePublicationUri.resolve(TaNames.certificateFileName(signCtx.taCertificate.getSubject()));
+        result.put(taCertificateUri, signCtx.taCertificate);
+        hashes.put(taCertificateUri.toString(), PublishedObjectsDelta.sha256(signCtx.taCertificate.getEncoded()).toString());
+        final long crlStart = System.nanoTime();
         final X509Crl newCrl = createNewCrl(signCtx);
         signCtx.taState.setCrl(newCrl);
-        result.put(taProductsPublicationUri.resolve(TaNames.crlFileName(signCtx.taCertificate.getSubject())), newCrl);
-        result.put(taProductsPublicationUri.resolve(TaNames.manifestFileName(signCtx.taCertificate.getSubject())), createNewManifest(signCtx));
+        RunReport.phase("crl", crlStart);
+        final URI crlUri = taProductsPublicationUri.resolve(TaNames.crlFileName(signCtx.taCertificate.getSubject()));
+        result.put(crlUri, newCrl);
+        hashes.put(crlUri.toString(), PublishedObjectsDelta.sha256(newCrl.getEncoded()).toString());
+        final URI manifestUri = taProductsPublicationUri.resolve(TaNames.manifestFileName(signCtx.taCertificate.getSubject()));
+        final ManifestCms manifest = createNewManifest(signCtx);
+        result.put(manifestUri, manifest);
+        hashes.put(manifestUri.toString(), PublishedObjectsDelta.sha256(manifest.getEncoded()).toString());
 
         int expectedSize = 3;
 
         for (final SignedResourceCertificate cert : signCtx.taState.getSignedProductionCertificates()) {
             if (cert.isPublishable()) {
-                result.put(taProductsPublicationUri.resolve(cert.getFileName()), cert.getCertificateRepositoryObject());
+                final URI certificateUri = taProductsPublicationUri.resolve(cert.getFileName());
+                result.put(certificateUri, cert.getCertificateRepositoryObject());
+                hashes.put(certificateUri.toString(), HashCode.fromBytes(cert.getSha256()).toString());
                 expectedSize++;
             }
         }
 
         // Track the objects and verify that they do not have overlapping names.
         Verify.verify(expectedSize == result.size());
+        signCtx.taState.setPublishedObjectHashes(hashes);
         return Collections.unmodifiableMap(result);
     }
 
-    private X509Crl createNewCrl(final SignCtx signCtx) {
+    @VisibleForTesting
+    X509Crl createNewCrl(final SignCtx signCtx) {
         final X500Principal issuer = signCtx.taCertificate.getSubject();
         final ValidityPeriod validityPeriod = validityPeriods.crl();
         final X509CrlBuilder builder = new X509CrlBuilder()
@@ -475,6 +1120,11 @@ public class TA {
         fillRevokedObjects(builder, signCtx.taState.getSignedProductionCertificates());
         fillRevokedObjects(builder, signCtx.taState.getPreviousTaCertificates());
         fillRevokedObjects(builder, signCtx.taState.getSignedManifests());
+        for (final Revocation revocation : signCtx.taState.getRevocations()) {
+            if (revocation.shouldAppearInCrl()) {
+                builder.addEntry(revocation.getSerial(), revocation.getRevocationTime());
+            }
+        }
         return builder.build(signCtx.keyPair.getPrivate());
     }
 
@@ -486,21 +1136,25 @@ public class TA {
         }
     }
 
-    private ManifestCms createNewManifest(final SignCtx signCtx) {
-        // Generate a new key pair for the one-time-use EE certificate
+    @VisibleForTesting
+    ManifestCms createNewManifest(final SignCtx signCtx) {
+        // Take a new key pair for the one-time-use EE certificate, generated in advance when the pool is used.
         // this key _needs_ to be stored in the HSM (and thus use the HSM keypair factory) because otherwise
         // the operation triggers an import of the key _into_ the security world, which is not allowed
-        // in FIPS 140-[23] level 3 mode.
-        final KeyPairFactory keyPairFactory = new KeyPairFactory(state.getConfig().getKeystoreProvider());
-        final KeyPair eeKeyPair = keyPairFactory.withProvider(state.getConfig().getKeypairGeneratorProvider()).generate();
+        // in FIPS 140-[23] level 3 mode. The pool generates its keys with the same providers.
+        final long keyStart = System.nanoTime();
+        final KeyPair eeKeyPair = EeKeyPool.take(state.getConfig());
+        RunReport.phase("manifest-ee-key", keyStart);
+        final long signStart = System.nanoTime();
         final X509ResourceCertificate eeCertificate = createEeCertificateForManifest(eeKeyPair, signCtx);
 
         final ManifestCmsBuilder manifestBuilder = createBasicManifestBuilder(eeCertificate, signCtx);
         manifestBuilder.addFile(TaNames.crlFileName(signCtx.taCertificate.getSubject()), signCtx.taState.getCrl().getEncoded());
         for (final SignedResourceCertificate signedProductionCertificate : signCtx.taState.getSignedProductionCertificates()) {
             if (signedProductionCertificate.isPublishable()) {
-                X509ResourceCertificate resourceCertificate = signedProductionCertificate.getResourceCertificate();
-                manifestBuilder.addFile(TaNames.certificateFileName(resourceCertificate.getSubject()), resourceCertificate.getEncoded());
+                // the file name is derived from the subject when the certificate is signed, the hash is kept in the
+                // state, so only new certificates are hashed
+                manifestBuilder.putFile(signedProductionCertificate.getFileName(), signedProductionCertificate.getSha256());
             }
         }
         final ManifestCms manifest = manifestBuilder.build(eeKeyPair.getPrivate());
@@ -512,10 +1166,12 @@ public class TA {
                     state.getConfig().getKeypairGeneratorProvider());
         }
         signCtx.taState.getSignedManifests().add(new SignedManifest(manifest));
+        RunReport.phase("manifest-signing", signStart);
         return manifest;
     }
 
     private X509ResourceCertificate signAllResourcesCertificate(final ResourceCertificateRequestData request,
+                                                                final BigInteger serial,
                                                                 final SignCtx signCtx) {
         final Config config = signCtx.taState.getConfig();
         final X500Principal issuer = signCtx.taCertificate.getSubject();
@@ -533,7 +1189,7 @@ public class TA {
         builder.withCa(true);
         builder.withIssuerDN(issuer);
         builder.withSubjectDN(request.getSubjectDN());
-        builder.withSerial(nextIssuedCertSerial(signCtx.taState));
+        builder.withSerial(serial);
         builder.withPublicKey(new EncodedPublicKey(request.getEncodedSubjectPublicKey()));
         builder.withSigningKeyPair(signCtx.keyPair);
         builder.withKeyUsage(KeyUsage.keyCertSign | KeyUsage.cRLSign);
@@ -595,45 +1251,47 @@ public class TA {
         return next;
     }
 
-    private boolean revokeAllCertificatesForKey(String encodedPublicKey, final TAState taState) {
-        boolean result = false;
-        for (final SignedResourceCertificate certificate : taState.getSignedProductionCertificates()) {
-            final PublicKey publicKey = certificate.getResourceCertificate().getPublicKey();
-            if (encodedPublicKey.equals(KeyPairUtil.getEncodedKeyIdentifier(publicKey)) && !certificate.isRevoked()) {
-                certificate.revoke();
-                result = true;
-            }
-        }
-        return result;
-    }
-
     /**
      * Revoke all certificates signed by the TA.
      * Needed when you intend to replace all signed objects by just those in the request.
      * @return true if anything was revoked.
      */
     private void revokeAllIssuedResourceCertificates(final TAState taState) {
-        taState.getSignedProductionCertificates().forEach(SignedResourceCertificate::revoke);
+        taState.getSignedProductionCertificates().replaceAll(certificate -> certificate.revoked(ValidityPeriods.now()));
     }
 
+    /**
+     * The configured signature provider, or its instrumented wrapper when provider instrumentation is enabled.
+     */
     private String getSignatureProvider() {
-        return state.getConfig().getSignatureProvider();
+        return InstrumentedProvider.wrap(state.getConfig().getSignatureProvider());
+    }
+
+    /**
+     * The signing environment for a request against a copy of the current state, for benchmarks of single steps.
+     */
+    @VisibleForTesting
+    SignCtx signContext(final TrustAnchorRequest request) throws IOException, GeneralSecurityException {
+        final Pair<KeyPair, X509ResourceCertificate> decoded = KeyStore.of(state.getConfig()).decode(state.getEncoded());
+        return new SignCtx(request, state.copy(), decoded.getRight(), decoded.getLeft());
     }
 
     /**
      * Just an utility class to carry the environment around when doing the signing.
      */
-    private static class SignCtx {
+    static class SignCtx {
         final TrustAnchorRequest request;
         final TAState taState;
         final X509ResourceCertificate taCertificate;
         final KeyPair keyPair;
+        final KeyIdentifierIndex certificatesByKey;
 
         private SignCtx(TrustAnchorRequest request, TAState taState, X509ResourceCertificate taCertificate, KeyPair keyPair) {
             this.request = request;
             this.taState = taState;
             this.taCertificate = taCertificate;
             this.keyPair = keyPair;
+            this.certificatesByKey = new KeyIdentifierIndex(taState.getSignedProductionCertificates());
         }
     }
 
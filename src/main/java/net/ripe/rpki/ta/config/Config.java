@@ -70,4 +70,20 @@ public class Config {
         this.minimumValidityPeriod = Preconditions.checkNotNull(minimumValidityPeriod, minimalValidityErrorMessage);
     }
 
+    public Config copy() {
+        final Config copy = new Config();
+        copy.trustAnchorName = trustAnchorName;
+        copy.keystoreProvider = keystoreProvider;
+        copy.keypairGeneratorProvider = keypairGeneratorProvider;
+        copy.signatureProvider = signatureProvider;
+        copy.keystoreType = keystoreType;
+        copy.persistentStorageDir = persistentStorageDir;
+        copy.taCertificatePublicationUri = taCertificatePublicationUri;
+        copy.taProductsPublicationUri = taProductsPublicationUri;
+        copy.notificationUri = notificationUri;
+        copy.minimumValidityPeriod = minimumValidityPeriod;
+        copy.taCertificateValidityPeriod = taCertificateValidityPeriod;
+        return copy;
+    }
+
 }
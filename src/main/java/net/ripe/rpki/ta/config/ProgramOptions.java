@@ -3,6 +3,7 @@ package net.ripe.rpki.ta.config;
 
 
 import net.ripe.rpki.ta.exception.BadOptionsException;
+import net.ripe.rpki.ta.serializers.StateFormat;
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.DefaultParser;
 import org.apache.commons.cli.HelpFormatter;
@@ -12,6 +13,8 @@ import org.apache.commons.cli.ParseException;
 
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.util.Set;
+import java.util.TreeSet;
 
 public class ProgramOptions {
 
@@ -22,7 +25,25 @@ public class ProgramOptions {
     private static final String PRINT_TAL_OPT = "print-tal";
     private static final String REQUEST_OPT = "request";
     private static final String RESPONSE_OPT = "response";
+    private static final String REQUEST_BATCH_OPT = "request-batch";
+    private static final String RESPONSE_DIRECTORY_OPT = "response-directory";
+    private static final String DELTA_RESPONSE_OPT = "delta-response";
+    private static final String PUBLISH_TO_OPT = "publish-to";
+    private static final String RRDP_DIRECTORY_OPT = "rrdp-directory";
+    private static final String PLAN_OPT = "plan";
     private static final String STORAGE_DIRECTORY = "storage-directory";
+    private static final String STATE_FORMAT_OPT = "state-format";
+    private static final String COMPACT_STATE_OPT = "compact-state";
+    private static final String STATE_JOURNAL_OPT = "state-journal";
+    private static final String SIGNING_THREADS_OPT = "signing-threads";
+    /**
+     * Signature providers of software keys, which sign on several threads at once. Keys of other providers, like the
+     * HSM, sign one certificate at a time, whatever the number of --signing-threads.
+     */
+    public static final Set<String> PARALLEL_SIGNATURE_PROVIDERS = Set.of("SunRsaSign", "BC");
+    private static final String DAEMON_OPT = "daemon";
+    private static final String EE_KEY_POOL_SIZE_OPT = "ee-key-pool-size";
+    private static final String INSTRUMENT_PROVIDERS_OPT = "instrument-providers";
     public static final String FORCE_NEW_TA_CERT_OPT = "force-new-ta-certificate";
     public static final String REVOKE_NON_REQUESTED_OBJECTS = "revoke-non-requested-objects";
 
@@ -77,10 +98,76 @@ public class ProgramOptions {
                 desc("Path to the response file that was processed").
                 build());
 
+        options.addOption(Option.builder().longOpt(REQUEST_BATCH_OPT).
+                hasArg().
+                desc("Directory with request files (*.xml), or a comma separated list of request files, to process in order of their creation time").
+                build());
+
+        options.addOption(Option.builder().longOpt(RESPONSE_DIRECTORY_OPT).
+                hasArg().
+                desc("Directory to write the responses for --" + REQUEST_BATCH_OPT + " to, using the file names of the requests").
+                build());
+
+        options.addOption(Option.builder().longOpt(DELTA_RESPONSE_OPT).
+                hasArg(false).
+                desc("Also write the published objects of each response relative to those of the previous request (added, updated, unchanged or withdrawn) to <response>.delta.xml").
+                build());
+
+        options.addOption(Option.builder().longOpt(PUBLISH_TO_OPT).
+                hasArg().
+                desc("Write the published objects to this directory, as <module>/<path> of their rsync URI, replacing only the objects that changed").
+                build());
+
+        options.addOption(Option.builder().longOpt(RRDP_DIRECTORY_OPT).
+                hasArg().
+                desc("Write the published objects as RRDP notification.xml, snapshot and delta files to this directory, with the session and serial kept in the directory").
+                build());
+
+        options.addOption(Option.builder().longOpt(PLAN_OPT).
+                hasArg().
+                desc("Instead of processing the request, write what processing it would do to this file ('-' for stdout), without using the private key or changing the state").
+                build());
+
         options.addOption(Option.builder().longOpt(STORAGE_DIRECTORY).
                 hasArg(true).
                 desc("Path to the persistent storage directory").
                 build());
+
+        options.addOption(Option.builder().longOpt(STATE_FORMAT_OPT).
+                hasArg(true).
+                desc("Store the trust anchor state as 'xml' (ta.xml) or 'binary' (ta.bin), converting the existing state if needed").
+                build());
+
+        options.addOption(Option.builder().longOpt(COMPACT_STATE_OPT).
+                hasArg(false).
+                desc("Remove expired and revoked objects from the trust anchor state").
+                build());
+
+        options.addOption(Option.builder().longOpt(STATE_JOURNAL_OPT).
+                hasArg(true).
+                desc("'on' to append changes to the trust anchor state to a journal (ta.journal) instead of rewriting the state on every run, 'off' to disable the journal").
+                build());
+
+        options.addOption(Option.builder().longOpt(SIGNING_THREADS_OPT).
+                hasArg(true).
+                desc("Number of threads to sign the certificates of a request with (default 1). Only used with the software keys of the " +
+                        String.join(" and ", new TreeSet<>(PARALLEL_SIGNATURE_PROVIDERS)) + " signature providers").
+                build());
+
+        options.addOption(Option.builder().longOpt(EE_KEY_POOL_SIZE_OPT).
+                hasArg(true).
+                desc("Number of manifest EE key pairs to generate in the background while the state is loaded (default 0, generate them when needed)").
+                build());
+
+        options.addOption(Option.builder().longOpt(INSTRUMENT_PROVIDERS_OPT).
+                hasArg(false).
+                desc("Count and time the signatures and key pair generations of the configured providers and include them in the run report").
+                build());
+
+        options.addOption(Option.builder().longOpt(DAEMON_OPT).
+                hasArg(true).
+                desc("Keep the trust anchor loaded and serve commands on this port of the loopback interface, 0 for any free port. The port and access token are written to ta.daemon in the storage directory").
+                build());
     }
 
     public ProgramOptions(String... args) throws BadOptionsException {
@@ -94,11 +181,29 @@ public class ProgramOptions {
     public void validateOptions() throws BadOptionsException {
         if (!hasEnv() || !(
                 hasInitialiseOption() || hasGenerateTACertificateOption() || hasExportCertificateOption() ||
-                hasForceNewTaCertificate() || hasPrintTALOption() || hasRequestOption() || hasResponseOption()
+                hasForceNewTaCertificate() || hasPrintTALOption() || hasRequestOption() || hasResponseOption() ||
+                hasRequestBatchOption() || hasStateFormatOption() || hasCompactStateOption() || hasStateJournalOption() ||
+                hasDaemonOption()
         )) {
             throw new BadOptionsException("Doesn't have meaningful options.");
         }
 
+        if (hasStateFormatOption()) {
+            getStateFormat();
+        }
+
+        if (hasStateJournalOption()) {
+            getStateJournal();
+        }
+
+        getSigningThreads();
+
+        getEeKeyPoolSize();
+
+        if (hasDaemonOption()) {
+            getDaemonPort();
+        }
+
         checkIncompatible(GENERATE_TA_CERTIFICATE_OPT, INITIALISE_OPT, PRINT_TAL_OPT, EXPORT_TA_CERTIFICATE_OPT);
 
         checkIncompatible(EXPORT_TA_CERTIFICATE_OPT, INITIALISE_OPT);
@@ -107,14 +212,40 @@ public class ProgramOptions {
 
         checkIncompatible(REQUEST_OPT, INITIALISE_OPT, GENERATE_TA_CERTIFICATE_OPT, EXPORT_TA_CERTIFICATE_OPT, PRINT_TAL_OPT);
 
+        checkIncompatible(REQUEST_BATCH_OPT, REQUEST_OPT, RESPONSE_OPT, INITIALISE_OPT, GENERATE_TA_CERTIFICATE_OPT, EXPORT_TA_CERTIFICATE_OPT, PRINT_TAL_OPT);
+
         checkIncompatible(EXPORT_TA_CERTIFICATE_OPT, PRINT_TAL_OPT);
 
-        checkDependency(REQUEST_OPT, RESPONSE_OPT);
+        checkIncompatible(DAEMON_OPT, INITIALISE_OPT, GENERATE_TA_CERTIFICATE_OPT, EXPORT_TA_CERTIFICATE_OPT, PRINT_TAL_OPT,
+                REQUEST_OPT, RESPONSE_OPT, REQUEST_BATCH_OPT, COMPACT_STATE_OPT, STATE_FORMAT_OPT, STATE_JOURNAL_OPT);
+
+        checkIncompatible(COMPACT_STATE_OPT, INITIALISE_OPT);
+
+        checkIncompatible(PLAN_OPT, RESPONSE_OPT, REQUEST_BATCH_OPT, DAEMON_OPT, COMPACT_STATE_OPT, STATE_FORMAT_OPT, STATE_JOURNAL_OPT,
+                DELTA_RESPONSE_OPT, PUBLISH_TO_OPT, RRDP_DIRECTORY_OPT, SIGNING_THREADS_OPT, EE_KEY_POOL_SIZE_OPT);
+
+        checkDependency(PLAN_OPT, REQUEST_OPT);
+
+        if (!hasPlanOption()) {
+            checkDependency(REQUEST_OPT, RESPONSE_OPT);
+        }
 
         checkDependency(RESPONSE_OPT, REQUEST_OPT);
 
-        checkDependency(FORCE_NEW_TA_CERT_OPT, REQUEST_OPT, RESPONSE_OPT);
-        checkDependency(REVOKE_NON_REQUESTED_OBJECTS, REQUEST_OPT, RESPONSE_OPT);
+        checkDependency(REQUEST_BATCH_OPT, RESPONSE_DIRECTORY_OPT);
+
+        checkDependency(RESPONSE_DIRECTORY_OPT, REQUEST_BATCH_OPT);
+
+        checkRequestDependency(FORCE_NEW_TA_CERT_OPT);
+        checkRequestDependency(REVOKE_NON_REQUESTED_OBJECTS);
+        checkRequestDependency(SIGNING_THREADS_OPT);
+        checkRequestDependency(DELTA_RESPONSE_OPT);
+        checkRequestDependency(PUBLISH_TO_OPT);
+        checkRequestDependency(RRDP_DIRECTORY_OPT);
+
+        if (hasDeltaResponseOption() && "-".equals(getResponseFile())) {
+            throw new BadOptionsException("Option --" + DELTA_RESPONSE_OPT + " needs a response file, it can not be used with --" + RESPONSE_OPT + "=-.");
+        }
     }
 
     private void checkDependency(final String option, final String... dependencies) throws BadOptionsException {
@@ -125,6 +256,17 @@ public class ProgramOptions {
         }
     }
 
+    /**
+     * Options for processing requests apply to a single request as well as to a batch, and to the plan for a request.
+     */
+    private void checkRequestDependency(final String option) throws BadOptionsException {
+        if (hasPlanOption()) {
+            checkDependency(option, REQUEST_OPT);
+        } else if (!hasRequestBatchOption()) {
+            checkDependency(option, REQUEST_OPT, RESPONSE_OPT);
+        }
+    }
+
     private void checkIncompatible(final String option, final String... incompatibleList) throws BadOptionsException {
         for (final String incompatibleOption : incompatibleList) {
             if (commandLine.hasOption(option) && commandLine.hasOption(incompatibleOption)) {
@@ -165,6 +307,46 @@ public class ProgramOptions {
         return commandLine.hasOption(RESPONSE_OPT);
     }
 
+    public boolean hasRequestBatchOption() {
+        return commandLine.hasOption(REQUEST_BATCH_OPT);
+    }
+
+    public String getRequestBatch() {
+        return commandLine.getOptionValue(REQUEST_BATCH_OPT);
+    }
+
+    public String getResponseDirectory() {
+        return commandLine.getOptionValue(RESPONSE_DIRECTORY_OPT);
+    }
+
+    public boolean hasDeltaResponseOption() {
+        return commandLine.hasOption(DELTA_RESPONSE_OPT);
+    }
+
+    public boolean hasPublishToOption() {
+        return commandLine.hasOption(PUBLISH_TO_OPT);
+    }
+
+    public String getPublishDirectory() {
+        return commandLine.getOptionValue(PUBLISH_TO_OPT);
+    }
+
+    public boolean hasRrdpDirectoryOption() {
+        return commandLine.hasOption(RRDP_DIRECTORY_OPT);
+    }
+
+    public String getRrdpDirectory() {
+        return commandLine.getOptionValue(RRDP_DIRECTORY_OPT);
+    }
+
+    public boolean hasPlanOption() {
+        return commandLine.hasOption(PLAN_OPT);
+    }
+
+    public String getPlanFile() {
+        return commandLine.getOptionValue(PLAN_OPT);
+    }
+
     public boolean hasEnv() {
         return commandLine.hasOption(ENV_OPT);
     }
@@ -185,6 +367,97 @@ public class ProgramOptions {
         return commandLine.getOptionValue(STORAGE_DIRECTORY);
     }
 
+    public boolean hasCompactStateOption() {
+        return commandLine.hasOption(COMPACT_STATE_OPT);
+    }
+
+    public boolean hasStateFormatOption() {
+        return commandLine.hasOption(STATE_FORMAT_OPT);
+    }
+
+    public StateFormat getStateFormat() throws BadOptionsException {
+        try {
+            return StateFormat.parse(commandLine.getOptionValue(STATE_FORMAT_OPT));
+        } catch (IllegalArgumentException e) {
+            throw new BadOptionsException(e.getMessage());
+        }
+    }
+
+    public boolean hasStateJournalOption() {
+        return commandLine.hasOption(STATE_JOURNAL_OPT);
+    }
+
+    public boolean getStateJournal() throws BadOptionsException {
+        final String value = commandLine.getOptionValue(STATE_JOURNAL_OPT);
+        if ("on".equalsIgnoreCase(value)) {
+            return true;
+        } else if ("off".equalsIgnoreCase(value)) {
+            return false;
+        }
+        throw new BadOptionsException("Option --" + STATE_JOURNAL_OPT + " must be 'on' or 'off'.");
+    }
+
+    public int getSigningThreads() throws BadOptionsException {
+        if (!commandLine.hasOption(SIGNING_THREADS_OPT)) {
+            return 1;
+        }
+        final String value = commandLine.getOptionValue(SIGNING_THREADS_OPT);
+        try {
+            final int threads = Integer.parseInt(value);
+            if (threads >= 1) {
+                return threads;
+            }
+        } catch (NumberFormatException e) {
+            // fall through to the error below
+        }
+        throw new BadOptionsException("Option --" + SIGNING_THREADS_OPT + " must be a positive number, not '" + value + "'.");
+    }
+
+    public int getEeKeyPoolSize() throws BadOptionsException {
+        if (!commandLine.hasOption(EE_KEY_POOL_SIZE_OPT)) {
+            return 0;
+        }
+        final String value = commandLine.getOptionValue(EE_KEY_POOL_SIZE_OPT);
+        try {
+            final int size = Integer.parseInt(value);
+            if (size >= 0) {
+                return size;
+            }
+        } catch (NumberFormatException e) {
+            // fall through to the error below
+        }
+        throw new BadOptionsException("Option --" + EE_KEY_POOL_SIZE_OPT + " must be zero or a positive number, not '" + value + "'.");
+    }
+
+    public boolean hasInstrumentProvidersOption() {
+        return commandLine.hasOption(INSTRUMENT_PROVIDERS_OPT);
+    }
+
+    public boolean hasDaemonOption() {
+        return commandLine.hasOption(DAEMON_OPT);
+    }
+
+    public int getDaemonPort() throws BadOptionsException {
+        final String value = commandLine.getOptionValue(DAEMON_OPT);
+        try {
+            final int port = Integer.parseInt(value);
+            if (port >= 0 && port <= 65535) {
+                return port;
+            }
+        } catch (NumberFormatException e) {
+            // fall through to the error below
+        }
+        throw new BadOptionsException("Option --" + DAEMON_OPT + " must be a port number, not '" + value + "'.");
+    }
+
+    /**
+     * @return true when the options do not change the trust anchor state.
+     */
+    public boolean isReadOnly() {
+        return !(hasGenerateTACertificateOption() || (hasRequestOption() && !hasPlanOption()) || hasRequestBatchOption()
+                || hasCompactStateOption() || hasStateFormatOption() || hasStateJournalOption());
+    }
+
     public String getTalFilePath() {
         return commandLine.getOptionValue(PRINT_TAL_OPT);
     }
@@ -0,0 +1,69 @@
+package net.ripe.rpki.ta.domain;
+
+
+import net.ripe.rpki.ta.serializers.legacy.SignedResourceCertificate;
+import org.joda.time.DateTime;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Positions of the live (not revoked) certificates in a list of signed production certificates, by the encoded key
+ * identifier of their public key.
+ *
+ * The index is built from the key identifiers stored with the certificates, so it does not decode or hash any key,
+ * and it is kept up to date when certificates are revoked or added through it. Revoking a certificate replaces it at
+ * the same position, so positions stay valid when the list is changed in that way elsewhere; removing or re-ordering
+ * certificates requires a new index.
+ */
+public class KeyIdentifierIndex {
+
+    private final List<SignedResourceCertificate> certificates;
+    private final Map<String, List<Integer>> livePositions = new HashMap<>();
+
+    public KeyIdentifierIndex(List<SignedResourceCertificate> certificates) {
+        this.certificates = certificates;
+        for (int position = 0; position < certificates.size(); position++) {
+            index(position);
+        }
+    }
+
+    /**
+     * Revoke all live certificates for the key.
+     *
+     * @return true if anything was revoked.
+     */
+    public boolean revoke(String encodedKeyIdentifier, DateTime revocationTime) {
+        final List<Integer> positions = livePositions.remove(encodedKeyIdentifier);
+        if (positions == null) {
+            return false;
+        }
+        boolean result = false;
+        for (final int position : positions) {
+            final SignedResourceCertificate certificate = certificates.get(position);
+            // it may have been revoked without going through the index
+            if (!certificate.isRevoked()) {
+                certificates.set(position, certificate.revoked(revocationTime));
+                result = true;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Append the certificate to the list.
+     */
+    public void add(SignedResourceCertificate certificate) {
+        certificates.add(certificate);
+        index(certificates.size() - 1);
+    }
+
+    private void index(int position) {
+        final SignedResourceCertificate certificate = certificates.get(position);
+        if (!certificate.isRevoked()) {
+            livePositions.computeIfAbsent(certificate.getKeyIdentifier(), k -> new ArrayList<>()).add(position);
+        }
+    }
+}
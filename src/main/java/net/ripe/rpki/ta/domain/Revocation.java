@@ -1,14 +1,38 @@
 package net.ripe.rpki.ta.domain;
 
 
+import lombok.AllArgsConstructor;
 import lombok.Data;
+import lombok.NoArgsConstructor;
+import net.ripe.rpki.ta.serializers.legacy.SignedObjectTracker;
+import net.ripe.rpki.ta.util.ValidityPeriods;
+import org.apache.commons.lang3.Validate;
 import org.joda.time.DateTime;
 
 import java.math.BigInteger;
 
+/**
+ * Tombstone of a revoked object: only what is needed to put the object on the CRL until it expires.
+ */
 @Data
+@NoArgsConstructor
+@AllArgsConstructor
 public class Revocation {
 
     private BigInteger serial;
     private DateTime notValidAfter;
+    private DateTime revocationTime;
+
+    public static Revocation of(SignedObjectTracker revokedObject) {
+        Validate.isTrue(revokedObject.isRevoked(), "only a revoked object can be replaced by a revocation");
+        return new Revocation(revokedObject.getCertificateSerial(), revokedObject.getNotValidAfter(), revokedObject.getRevocationTime());
+    }
+
+    public boolean isExpired() {
+        return ValidityPeriods.now().isAfter(notValidAfter);
+    }
+
+    public boolean shouldAppearInCrl() {
+        return !isExpired();
+    }
 }
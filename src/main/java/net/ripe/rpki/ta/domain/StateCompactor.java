@@ -0,0 +1,101 @@
+package net.ripe.rpki.ta.domain;
+
+
+import lombok.Value;
+import lombok.experimental.UtilityClass;
+import lombok.extern.slf4j.Slf4j;
+import net.ripe.rpki.ta.serializers.legacy.SignedManifest;
+import net.ripe.rpki.ta.serializers.legacy.SignedObjectTracker;
+
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Removes objects from the TA state that can never influence a CRL or manifest again, and replaces revoked manifests
+ * by {@link Revocation} tombstones.
+ */
+@UtilityClass
+@Slf4j(topic = "StateCompactor")
+public class StateCompactor {
+
+    /**
+     * Number of compactable objects after which the state is compacted while processing a request.
+     */
+    public static final int AUTOMATIC_COMPACTION_THRESHOLD = 50;
+
+    @Value
+    public static class Result {
+        int entries;
+        long bytes;
+    }
+
+    public static int countCompactable(final TAState state) {
+        return countCompactable(state.getPreviousTaCertificates())
+                + countCompactable(state.getSignedProductionCertificates())
+                + countCompactable(state.getSignedManifests())
+                + (int) state.getRevocations().stream().filter(Revocation::isExpired).count();
+    }
+
+    public static boolean shouldCompact(final TAState state) {
+        return countCompactable(state) >= AUTOMATIC_COMPACTION_THRESHOLD;
+    }
+
+    public static Result compact(final TAState state) {
+        final Result previousTaCertificates = compact(state.getPreviousTaCertificates());
+        final Result signedProductionCertificates = compact(state.getSignedProductionCertificates());
+        final Result signedManifests = compact(state.getSignedManifests());
+        final int revocationsBefore = state.getRevocations().size();
+        state.getRevocations().removeIf(Revocation::isExpired);
+        final int revocations = revocationsBefore - state.getRevocations().size();
+
+        final Result result = new Result(
+                previousTaCertificates.entries + signedProductionCertificates.entries + signedManifests.entries + revocations,
+                previousTaCertificates.bytes + signedProductionCertificates.bytes + signedManifests.bytes);
+        log.info("Compacted trust anchor state: removed {} expired objects ({} previous TA certificates, {} resource certificates, {} manifests, {} revocations), reclaimed {} bytes of DER",
+                result.entries, previousTaCertificates.entries, signedProductionCertificates.entries, signedManifests.entries, revocations, result.bytes);
+        return result;
+    }
+
+    /**
+     * Replace every revoked manifest by a {@link Revocation}. A revoked manifest is never published again, so only
+     * its EE certificate serial is needed for the CRL. This also migrates states written by older versions.
+     *
+     * @return the number of manifests that were replaced.
+     */
+    public static int replaceRevokedManifests(final TAState state) {
+        int replaced = 0;
+        for (final Iterator<SignedManifest> it = state.getSignedManifests().iterator(); it.hasNext(); ) {
+            final SignedManifest manifest = it.next();
+            if (manifest.isRevoked()) {
+                state.getRevocations().add(Revocation.of(manifest));
+                it.remove();
+                replaced++;
+            }
+        }
+        return replaced;
+    }
+
+    private static int countCompactable(final List<? extends SignedObjectTracker> trackers) {
+        int count = 0;
+        for (final SignedObjectTracker tracker : trackers) {
+            if (tracker.isCompactable()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static Result compact(final List<? extends SignedObjectTracker> trackers) {
+        int entries = 0;
+        long bytes = 0;
+        for (final Iterator<? extends SignedObjectTracker> it = trackers.iterator(); it.hasNext(); ) {
+            final SignedObjectTracker tracker = it.next();
+            if (tracker.isCompactable()) {
+                entries++;
+                bytes += tracker.getEncoded().length;
+                it.remove();
+            }
+        }
+        return new Result(entries, bytes);
+    }
+}
@@ -11,6 +11,8 @@ import net.ripe.rpki.ta.serializers.legacy.SignedResourceCertificate;
 import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 
 
 /**
@@ -40,4 +42,46 @@ public class TAState {
     private List<SignedResourceCertificate> signedProductionCertificates = new ArrayList<SignedResourceCertificate>();
 
     private List<SignedManifest> signedManifests = new ArrayList<SignedManifest>();
+
+    /**
+     * Revoked objects of which only the CRL entry is kept. Absent in states written by older versions.
+     */
+    private List<Revocation> revocations = new ArrayList<Revocation>();
+
+    /**
+     * The hex SHA-256 of the objects published by the response to the last processed request, by publication URI.
+     * Absent before the first request and in states written by older versions.
+     */
+    private Map<String, String> publishedObjectHashes;
+
+    public List<Revocation> getRevocations() {
+        if (revocations == null) {
+            revocations = new ArrayList<Revocation>();
+        }
+        return revocations;
+    }
+
+    /**
+     * Structural copy of the state. The lists are new, but the trackers, revocations, CRL and key store material are
+     * shared: they are replaced instead of modified. The configuration is copied, since request processing may
+     * update its URLs.
+     */
+    public TAState copy() {
+        final TAState copy = new TAState();
+        copy.encoded = encoded;
+        copy.config = config == null ? null : config.copy();
+        copy.crl = crl;
+        copy.keyStorePassphrase = keyStorePassphrase;
+        copy.keyStoreKeyAlias = keyStoreKeyAlias;
+        copy.lastIssuedCertificateSerial = lastIssuedCertificateSerial;
+        copy.lastCrlSerial = lastCrlSerial;
+        copy.lastMftSerial = lastMftSerial;
+        copy.lastProcessedRequestTimestamp = lastProcessedRequestTimestamp;
+        copy.previousTaCertificates = new ArrayList<>(previousTaCertificates);
+        copy.signedProductionCertificates = new ArrayList<>(signedProductionCertificates);
+        copy.signedManifests = new ArrayList<>(signedManifests);
+        copy.revocations = new ArrayList<>(getRevocations());
+        copy.publishedObjectHashes = publishedObjectHashes == null ? null : new TreeMap<>(publishedObjectHashes);
+        return copy;
+    }
 }
@@ -2,9 +2,11 @@ package net.ripe.rpki.ta.domain;
 
 
 import net.ripe.rpki.commons.crypto.crl.X509Crl;
+import net.ripe.rpki.ta.KeyStore;
 import net.ripe.rpki.ta.config.Config;
 
 import java.math.BigInteger;
+import java.util.Arrays;
 
 public class TAStateBuilder {
 
@@ -20,6 +22,9 @@ public class TAStateBuilder {
     }
 
     public TAStateBuilder withEncoded(byte[] encoded) {
+        if (taState.getEncoded() != null && !Arrays.equals(taState.getEncoded(), encoded)) {
+            KeyStore.invalidate(taState.getEncoded());
+        }
         taState.setEncoded(encoded);
         return this;
     }
@@ -0,0 +1,259 @@
+package net.ripe.rpki.ta.domain;
+
+
+import lombok.Getter;
+import lombok.Setter;
+import net.ripe.rpki.commons.crypto.crl.X509Crl;
+import net.ripe.rpki.ta.config.Config;
+import net.ripe.rpki.ta.serializers.Serializers;
+import net.ripe.rpki.ta.serializers.legacy.SignedManifest;
+import net.ripe.rpki.ta.serializers.legacy.SignedObjectTracker;
+import net.ripe.rpki.ta.serializers.legacy.SignedResourceCertificate;
+import org.joda.time.DateTime;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * The changes between two versions of the TA state, as recorded in the state journal.
+ *
+ * A null scalar means the value did not change. Trackers are matched on their certificate serial: they can be removed
+ * (compaction, tombstoning), revoked or appended. Changes that can not be expressed this way, such as resetting a
+ * value to null or re-ordering objects, make {@link #between} return nothing so the caller writes a full snapshot.
+ */
+@Getter
+@Setter
+public class TAStateDelta {
+
+    private byte[] encoded;
+    private Config config;
+    private X509Crl crl;
+    private String keyStorePassphrase;
+    private String keyStoreKeyAlias;
+    private BigInteger lastIssuedCertificateSerial;
+    private BigInteger lastCrlSerial;
+    private BigInteger lastMftSerial;
+    private Long lastProcessedRequestTimestamp;
+    private Map<String, String> publishedObjectHashes;
+
+    private final TrackerChanges<SignedResourceCertificate> previousTaCertificates = new TrackerChanges<>();
+    private final TrackerChanges<SignedResourceCertificate> signedProductionCertificates = new TrackerChanges<>();
+    private final TrackerChanges<SignedManifest> signedManifests = new TrackerChanges<>();
+
+    private final List<BigInteger> removedRevocations = new ArrayList<>();
+    private final List<Revocation> addedRevocations = new ArrayList<>();
+
+    @Getter
+    public static class TrackerChanges<T extends SignedObjectTracker> {
+        private final List<BigInteger> removed = new ArrayList<>();
+        private final Map<BigInteger, DateTime> revoked = new LinkedHashMap<>();
+        private final List<T> added = new ArrayList<>();
+
+        public boolean isEmpty() {
+            return removed.isEmpty() && revoked.isEmpty() && added.isEmpty();
+        }
+
+        void applyTo(List<T> trackers) {
+            final Set<BigInteger> removedSerials = new HashSet<>(removed);
+            trackers.removeIf(tracker -> removedSerials.contains(tracker.getCertificateSerial()));
+            for (final Map.Entry<BigInteger, DateTime> revocation : revoked.entrySet()) {
+                trackers.stream()
+                        .filter(tracker -> tracker.getCertificateSerial().equals(revocation.getKey()))
+                        .findFirst()
+                        .orElseThrow(() -> new IllegalStateException("Journal revokes unknown object with serial " + revocation.getKey()))
+                        .revoke(revocation.getValue());
+            }
+            trackers.addAll(added);
+        }
+    }
+
+    public static Optional<TAStateDelta> between(TAStateSummary before, TAState after) {
+        if (!before.isSerialsUnique()) {
+            return Optional.empty();
+        }
+        final TAStateDelta delta = new TAStateDelta();
+
+        if (!Arrays.equals(before.getEncoded(), after.getEncoded())) {
+            if (after.getEncoded() == null) {
+                return Optional.empty();
+            }
+            delta.encoded = after.getEncoded();
+        }
+        final String afterConfig = after.getConfig() == null ? null : Serializers.config().serialize(after.getConfig());
+        if (!Objects.equals(before.getConfig(), afterConfig)) {
+            if (afterConfig == null) {
+                return Optional.empty();
+            }
+            delta.config = after.getConfig();
+        }
+        if (!Arrays.equals(encodedCrl(before.getCrl()), encodedCrl(after.getCrl()))) {
+            if (after.getCrl() == null) {
+                return Optional.empty();
+            }
+            delta.crl = after.getCrl();
+        }
+
+        if (!(diff(before.getKeyStorePassphrase(), after.getKeyStorePassphrase(), delta::setKeyStorePassphrase)
+                && diff(before.getKeyStoreKeyAlias(), after.getKeyStoreKeyAlias(), delta::setKeyStoreKeyAlias)
+                && diff(before.getLastIssuedCertificateSerial(), after.getLastIssuedCertificateSerial(), delta::setLastIssuedCertificateSerial)
+                && diff(before.getLastCrlSerial(), after.getLastCrlSerial(), delta::setLastCrlSerial)
+                && diff(before.getLastMftSerial(), after.getLastMftSerial(), delta::setLastMftSerial)
+                && diff(before.getLastProcessedRequestTimestamp(), after.getLastProcessedRequestTimestamp(), delta::setLastProcessedRequestTimestamp))) {
+            return Optional.empty();
+        }
+        if (!diff(before.getPublishedObjectHashes(), after.getPublishedObjectHashes(), delta::setPublishedObjectHashes)) {
+            return Optional.empty();
+        }
+
+        if (!(diff(before.getPreviousTaCertificates(), after.getPreviousTaCertificates(), delta.previousTaCertificates)
+                && diff(before.getSignedProductionCertificates(), after.getSignedProductionCertificates(), delta.signedProductionCertificates)
+                && diff(before.getSignedManifests(), after.getSignedManifests(), delta.signedManifests))) {
+            return Optional.empty();
+        }
+
+        final List<BigInteger> afterRevocations = after.getRevocations().stream().map(Revocation::getSerial).collect(Collectors.toList());
+        if (!isAppendOnly(new ArrayList<>(before.getRevocations()), afterRevocations)) {
+            return Optional.empty();
+        }
+        for (final BigInteger serial : before.getRevocations()) {
+            if (!afterRevocations.contains(serial)) {
+                delta.removedRevocations.add(serial);
+            }
+        }
+        for (final Revocation revocation : after.getRevocations()) {
+            if (!before.getRevocations().contains(revocation.getSerial())) {
+                delta.addedRevocations.add(revocation);
+            }
+        }
+
+        return Optional.of(delta);
+    }
+
+    public boolean isEmpty() {
+        return encoded == null && config == null && crl == null
+                && keyStorePassphrase == null && keyStoreKeyAlias == null
+                && lastIssuedCertificateSerial == null && lastCrlSerial == null && lastMftSerial == null
+                && lastProcessedRequestTimestamp == null && publishedObjectHashes == null
+                && previousTaCertificates.isEmpty() && signedProductionCertificates.isEmpty() && signedManifests.isEmpty()
+                && removedRevocations.isEmpty() && addedRevocations.isEmpty();
+    }
+
+    public void applyTo(TAState state) {
+        if (encoded != null) {
+            state.setEncoded(encoded);
+        }
+        if (config != null) {
+            state.setConfig(config);
+        }
+        if (crl != null) {
+            state.setCrl(crl);
+        }
+        if (keyStorePassphrase != null) {
+            state.setKeyStorePassphrase(keyStorePassphrase);
+        }
+        if (keyStoreKeyAlias != null) {
+            state.setKeyStoreKeyAlias(keyStoreKeyAlias);
+        }
+        if (lastIssuedCertificateSerial != null) {
+            state.setLastIssuedCertificateSerial(lastIssuedCertificateSerial);
+        }
+        if (lastCrlSerial != null) {
+            state.setLastCrlSerial(lastCrlSerial);
+        }
+        if (lastMftSerial != null) {
+            state.setLastMftSerial(lastMftSerial);
+        }
+        if (lastProcessedRequestTimestamp != null) {
+            state.setLastProcessedRequestTimestamp(lastProcessedRequestTimestamp);
+        }
+        if (publishedObjectHashes != null) {
+            state.setPublishedObjectHashes(new TreeMap<>(publishedObjectHashes));
+        }
+
+        previousTaCertificates.applyTo(state.getPreviousTaCertificates());
+        signedProductionCertificates.applyTo(state.getSignedProductionCertificates());
+        signedManifests.applyTo(state.getSignedManifests());
+
+        final Set<BigInteger> removed = new HashSet<>(removedRevocations);
+        state.getRevocations().removeIf(revocation -> removed.contains(revocation.getSerial()));
+        state.getRevocations().addAll(addedRevocations);
+    }
+
+    private static byte[] encodedCrl(X509Crl crl) {
+        return crl == null ? null : crl.getEncoded();
+    }
+
+    private static <V> boolean diff(V before, V after, Consumer<V> setter) {
+        if (Objects.equals(before, after)) {
+            return true;
+        }
+        if (after == null) {
+            return false;
+        }
+        setter.accept(after);
+        return true;
+    }
+
+    private static <T extends SignedObjectTracker> boolean diff(Map<BigInteger, DateTime> before, List<T> after, TrackerChanges<T> changes) {
+        final List<BigInteger> afterSerials = new ArrayList<>(after.size());
+        for (final T tracker : after) {
+            afterSerials.add(tracker.getCertificateSerial());
+        }
+        if (!isAppendOnly(new ArrayList<>(before.keySet()), afterSerials)) {
+            return false;
+        }
+
+        final Set<BigInteger> afterSerialSet = new HashSet<>(afterSerials);
+        for (final BigInteger serial : before.keySet()) {
+            if (!afterSerialSet.contains(serial)) {
+                changes.removed.add(serial);
+            }
+        }
+        for (final T tracker : after) {
+            final BigInteger serial = tracker.getCertificateSerial();
+            if (!before.containsKey(serial)) {
+                changes.added.add(tracker);
+            } else if (!sameInstant(before.get(serial), tracker.getRevocationTime())) {
+                if (tracker.getRevocationTime() == null || before.get(serial) != null) {
+                    // un-revoking or changing a revocation time can not be replayed
+                    return false;
+                }
+                changes.revoked.put(serial, tracker.getRevocationTime());
+            }
+        }
+        return true;
+    }
+
+    private static boolean sameInstant(DateTime a, DateTime b) {
+        return a == null ? b == null : b != null && a.getMillis() == b.getMillis();
+    }
+
+    /**
+     * Replaying a delta removes objects and appends new ones at the end. That reproduces the new order only when the
+     * retained objects kept their relative order, all new objects come after them and no serial occurs twice.
+     */
+    private static boolean isAppendOnly(List<BigInteger> before, List<BigInteger> after) {
+        final Set<BigInteger> afterSet = new HashSet<>(after);
+        if (afterSet.size() != after.size()) {
+            return false;
+        }
+        final Set<BigInteger> beforeSet = new HashSet<>(before);
+        final List<BigInteger> retainedBefore = before.stream().filter(afterSet::contains).collect(Collectors.toList());
+        final int retained = retainedBefore.size();
+        if (after.size() < retained || !after.subList(0, retained).equals(retainedBefore)) {
+            return false;
+        }
+        return after.subList(retained, after.size()).stream().noneMatch(beforeSet::contains);
+    }
+}
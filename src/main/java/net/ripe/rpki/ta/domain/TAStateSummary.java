@@ -0,0 +1,88 @@
+package net.ripe.rpki.ta.domain;
+
+
+import lombok.Getter;
+import net.ripe.rpki.commons.crypto.crl.X509Crl;
+import net.ripe.rpki.ta.serializers.Serializers;
+import net.ripe.rpki.ta.serializers.legacy.SignedObjectTracker;
+import org.joda.time.DateTime;
+
+import java.math.BigInteger;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Immutable record of what a persisted TA state contained, detailed enough to compute a {@link TAStateDelta} against
+ * a later state. Trackers are identified by their certificate serial and only their revocation time is recorded,
+ * since the objects themselves never change.
+ */
+@Getter
+public final class TAStateSummary {
+
+    private final byte[] encoded;
+    private final String config;
+    private final X509Crl crl;
+    private final String keyStorePassphrase;
+    private final String keyStoreKeyAlias;
+    private final BigInteger lastIssuedCertificateSerial;
+    private final BigInteger lastCrlSerial;
+    private final BigInteger lastMftSerial;
+    private final Long lastProcessedRequestTimestamp;
+
+    private final Map<BigInteger, DateTime> previousTaCertificates;
+    private final Map<BigInteger, DateTime> signedProductionCertificates;
+    private final Map<BigInteger, DateTime> signedManifests;
+    private final Set<BigInteger> revocations;
+    private final Map<String, String> publishedObjectHashes;
+
+    /**
+     * False when some serial occurs more than once, such a state can not be described by a delta.
+     */
+    private final boolean serialsUnique;
+
+    private TAStateSummary(TAState state) {
+        this.encoded = state.getEncoded();
+        this.config = state.getConfig() == null ? null : Serializers.config().serialize(state.getConfig());
+        this.crl = state.getCrl();
+        this.keyStorePassphrase = state.getKeyStorePassphrase();
+        this.keyStoreKeyAlias = state.getKeyStoreKeyAlias();
+        this.lastIssuedCertificateSerial = state.getLastIssuedCertificateSerial();
+        this.lastCrlSerial = state.getLastCrlSerial();
+        this.lastMftSerial = state.getLastMftSerial();
+        this.lastProcessedRequestTimestamp = state.getLastProcessedRequestTimestamp();
+
+        this.previousTaCertificates = summarise(state.getPreviousTaCertificates());
+        this.signedProductionCertificates = summarise(state.getSignedProductionCertificates());
+        this.signedManifests = summarise(state.getSignedManifests());
+
+        final Set<BigInteger> revocationSerials = new LinkedHashSet<>();
+        for (final Revocation revocation : state.getRevocations()) {
+            revocationSerials.add(revocation.getSerial());
+        }
+        this.revocations = Collections.unmodifiableSet(revocationSerials);
+        this.publishedObjectHashes = state.getPublishedObjectHashes() == null ? null
+                : Collections.unmodifiableMap(new TreeMap<>(state.getPublishedObjectHashes()));
+
+        this.serialsUnique = previousTaCertificates.size() == state.getPreviousTaCertificates().size()
+                && signedProductionCertificates.size() == state.getSignedProductionCertificates().size()
+                && signedManifests.size() == state.getSignedManifests().size()
+                && revocations.size() == state.getRevocations().size();
+    }
+
+    public static TAStateSummary of(TAState state) {
+        return new TAStateSummary(state);
+    }
+
+    private static Map<BigInteger, DateTime> summarise(List<? extends SignedObjectTracker> trackers) {
+        final Map<BigInteger, DateTime> result = new LinkedHashMap<>();
+        for (final SignedObjectTracker tracker : trackers) {
+            result.put(tracker.getCertificateSerial(), tracker.getRevocationTime());
+        }
+        return Collections.unmodifiableMap(result);
+    }
+}
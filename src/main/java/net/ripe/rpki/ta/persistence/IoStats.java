@@ -0,0 +1,30 @@
+package net.ripe.rpki.ta.persistence;
+
+
+import com.google.common.hash.HashCode;
+import lombok.Value;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bytes transferred and time spent by a persistence operation, with the sha256 of the content when it was hashed.
+ */
+@Value
+public class IoStats {
+    long bytes;
+    long nanos;
+    HashCode sha256;
+
+    public long getMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+    IoStats plus(IoStats other) {
+        return new IoStats(bytes + other.bytes, nanos + other.nanos, sha256);
+    }
+
+    @Override
+    public String toString() {
+        return bytes + " bytes in " + getMillis() + " ms";
+    }
+}
@@ -0,0 +1,38 @@
+package net.ripe.rpki.ta.persistence;
+
+
+import com.google.common.hash.HashCode;
+import lombok.Value;
+import net.ripe.rpki.ta.domain.TAStateSummary;
+import net.ripe.rpki.ta.serializers.StateFormat;
+
+import java.io.File;
+
+/**
+ * What is on disk after a load or save: the snapshot and, when journaling is used, the journal on top of it. This is
+ * what the next save computes its delta against.
+ */
+@Value
+public class PersistedState {
+    File directory;
+    TAStateSummary summary;
+    StateFormat format;
+    HashCode snapshotSha256;
+    long snapshotSize;
+
+    /**
+     * True when the journal in the directory belongs to this snapshot, so records can be appended to it.
+     */
+    boolean journalled;
+    int journalRecords;
+    long journalLength;
+
+    /**
+     * The I/O of the load or save that resulted in this state.
+     */
+    IoStats io;
+
+    PersistedState appended(TAStateSummary newSummary, long newJournalLength, IoStats appendIo) {
+        return new PersistedState(directory, newSummary, format, snapshotSha256, snapshotSize, true, journalRecords + 1, newJournalLength, appendIo);
+    }
+}
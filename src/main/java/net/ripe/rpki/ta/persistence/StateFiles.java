@@ -0,0 +1,94 @@
+package net.ripe.rpki.ta.persistence;
+
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.hash.HashingOutputStream;
+import lombok.Value;
+import lombok.experimental.UtilityClass;
+import net.ripe.rpki.ta.util.FileUtil;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * File operations of the persistence layer. Content is hashed while it is written or read, so no file is read back
+ * to compute its sha256, and everything that is written is forced to disk.
+ */
+@UtilityClass
+class StateFiles {
+
+    /**
+     * Files at least this large are memory-mapped instead of read into the heap.
+     */
+    static final long MMAP_THRESHOLD = 1024 * 1024;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    interface Content {
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    @Value
+    static class ReadResult {
+        ByteBuffer content;
+        IoStats stats;
+    }
+
+    /**
+     * Write the content to the file, replacing it, and force it to disk.
+     */
+    static IoStats write(File target, Content content) throws IOException {
+        final long start = System.nanoTime();
+        try (final FileChannel channel = FileChannel.open(target.toPath(),
+                StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            final HashingOutputStream hashing = new HashingOutputStream(Hashing.sha256(), Channels.newOutputStream(channel));
+            final OutputStream out = new BufferedOutputStream(hashing, BUFFER_SIZE);
+            content.writeTo(out);
+            out.flush();
+            channel.force(true);
+            return new IoStats(channel.size(), System.nanoTime() - start, hashing.hash());
+        }
+    }
+
+    /**
+     * Copy the source to the target in one pass, the sha256 of the source is computed on the way.
+     */
+    static IoStats copy(File source, File target) throws IOException {
+        return write(target, out -> Files.copy(source.toPath(), out));
+    }
+
+    static ReadResult read(File source) throws IOException {
+        final long start = System.nanoTime();
+        try (final FileChannel channel = FileChannel.open(source.toPath(), StandardOpenOption.READ)) {
+            final long size = channel.size();
+            final ByteBuffer content;
+            if (size >= MMAP_THRESHOLD) {
+                content = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            } else {
+                content = ByteBuffer.allocate((int) size);
+                while (content.hasRemaining() && channel.read(content) >= 0) {
+                    // keep reading
+                }
+                content.flip();
+            }
+            final Hasher hasher = Hashing.sha256().newHasher();
+            hasher.putBytes(content.duplicate());
+            return new ReadResult(content, new IoStats(size, System.nanoTime() - start, hasher.hash()));
+        }
+    }
+
+    /**
+     * Atomically move the source over the target and force the directory entry to disk.
+     */
+    static void move(File source, File target) throws IOException {
+        FileUtil.moveAtomically(source, target);
+    }
+}
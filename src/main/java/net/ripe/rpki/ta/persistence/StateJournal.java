@@ -0,0 +1,160 @@
+package net.ripe.rpki.ta.persistence;
+
+
+import com.google.common.hash.HashCode;
+import lombok.Value;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of state deltas on top of a snapshot (ta.xml or ta.bin).
+ *
+ * The header contains the sha256 of the snapshot the records apply to. A checkpoint first replaces the snapshot and
+ * then resets the journal, so after a crash in between the header no longer matches and the stale records are
+ * ignored. Every record is followed by its CRC32: a torn or corrupted tail left by an interrupted append is skipped on
+ * load and truncated on the next append.
+ *
+ * <pre>
+ *   header: int magic ("TA0J"), int version, int length + snapshot sha256
+ *   record: int length, payload, long crc32 of the payload
+ * </pre>
+ */
+class StateJournal {
+
+    static final String FILENAME = "ta.journal";
+
+    private static final int MAGIC = 0x5441304A;
+    private static final int VERSION = 1;
+    private static final int RECORD_OVERHEAD = Integer.BYTES + Long.BYTES;
+    private static final int HEADER_LENGTH = 3 * Integer.BYTES + 256 / Byte.SIZE;
+
+    private final File file;
+
+    StateJournal(File directory) {
+        this.file = new File(directory, FILENAME);
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    boolean exists() {
+        return file.exists();
+    }
+
+    boolean hasRecords() {
+        return file.length() > HEADER_LENGTH;
+    }
+
+    @Value
+    static class Contents {
+        List<byte[]> records;
+        /**
+         * Length of the header and all intact records, anything after it is a torn or corrupted tail.
+         */
+        long validLength;
+        long ignoredBytes;
+    }
+
+    /**
+     * @return the intact records of the journal, or null when there is no journal for the given snapshot.
+     */
+    Contents read(HashCode snapshotSha256) throws IOException {
+        if (!file.exists()) {
+            return null;
+        }
+        final ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+        try {
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                return null;
+            }
+            final byte[] hash = new byte[buffer.getInt()];
+            buffer.get(hash);
+            if (!Arrays.equals(hash, snapshotSha256.asBytes())) {
+                return null;
+            }
+        } catch (BufferUnderflowException | NegativeArraySizeException e) {
+            return null;
+        }
+
+        final List<byte[]> records = new ArrayList<>();
+        long validLength = buffer.position();
+        while (buffer.remaining() >= RECORD_OVERHEAD) {
+            final int length = buffer.getInt();
+            if (length < 0 || length > buffer.remaining() - Long.BYTES) {
+                break;
+            }
+            final byte[] payload = new byte[length];
+            buffer.get(payload);
+            if (buffer.getLong() != crc32(payload)) {
+                break;
+            }
+            records.add(payload);
+            validLength = buffer.position();
+        }
+        return new Contents(Collections.unmodifiableList(records), validLength, buffer.limit() - validLength);
+    }
+
+    /**
+     * Append a record after the first validLength bytes of the journal and force it to disk.
+     *
+     * @return the new length of the journal.
+     */
+    long append(byte[] payload, long validLength) throws IOException {
+        final ByteBuffer record = ByteBuffer.allocate(RECORD_OVERHEAD + payload.length);
+        record.putInt(payload.length).put(payload).putLong(crc32(payload)).flip();
+
+        try (final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+            channel.truncate(validLength);
+            channel.position(validLength);
+            while (record.hasRemaining()) {
+                channel.write(record);
+            }
+            channel.force(true);
+            return channel.position();
+        }
+    }
+
+    /**
+     * Atomically replace the journal by an empty one for the given snapshot.
+     *
+     * @return the length of the empty journal.
+     */
+    long reset(HashCode snapshotSha256) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (final DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(snapshotSha256.bits() / Byte.SIZE);
+            out.write(snapshotSha256.asBytes());
+        }
+
+        final File tempFile = File.createTempFile("ta_", ".journal", file.getParentFile());
+        try {
+            StateFiles.write(tempFile, bytes::writeTo);
+            StateFiles.move(tempFile, file);
+        } finally {
+            if (tempFile.exists()) tempFile.delete();
+        }
+        return bytes.size();
+    }
+
+    private static long crc32(byte[] payload) {
+        final CRC32 crc = new CRC32();
+        crc.update(payload);
+        return crc.getValue();
+    }
+}
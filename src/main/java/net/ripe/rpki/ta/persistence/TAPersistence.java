@@ -1,71 +1,223 @@
 package net.ripe.rpki.ta.persistence;
 
 
-import com.google.common.base.Charsets;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Strings;
 import com.google.common.hash.HashCode;
-import com.google.common.hash.Hashing;
-import com.google.common.io.Files;
 import lombok.extern.slf4j.Slf4j;
 import net.ripe.rpki.ta.config.Config;
+import net.ripe.rpki.ta.domain.TAState;
+import net.ripe.rpki.ta.domain.TAStateDelta;
+import net.ripe.rpki.ta.domain.TAStateSummary;
+import net.ripe.rpki.ta.serializers.StateFormat;
+import net.ripe.rpki.ta.serializers.TAStateDeltaSerializer;
 import net.ripe.rpki.ta.util.FileUtil;
+import net.ripe.rpki.ta.util.RunReport;
+import org.apache.commons.lang3.tuple.Pair;
 
 import java.io.File;
 import java.io.IOException;
 import java.time.Instant;
+import java.util.Optional;
 
 @Slf4j(topic = "TAPersistence")
 public class TAPersistence {
 
     private static final String TRUST_ANCHOR_FILENAME = "ta";
-    private static final String TRUST_ANCHOR_FILE_EXT = "xml";
+
+    /**
+     * Maximum number of journal records before the next save writes a new snapshot, this bounds the replay on load.
+     * A checkpoint is also written when the journal would grow larger than the snapshot.
+     */
+    static final int CHECKPOINT_INTERVAL = 32;
 
     private final File persistenceDirectory;
-    private final File trustAnchorFile;
+    private final StateJournal journal;
 
     public TAPersistence(final Config config) {
         this.persistenceDirectory = new File(config.getPersistentStorageDir());
         if (!this.persistenceDirectory.exists()) this.persistenceDirectory.mkdirs();
         Preconditions.checkArgument(this.persistenceDirectory.isDirectory(), "Can't create directory: " + persistenceDirectory);
-        this.trustAnchorFile = new File(this.persistenceDirectory, TRUST_ANCHOR_FILENAME + "." + TRUST_ANCHOR_FILE_EXT);
+        this.journal = new StateJournal(persistenceDirectory);
+    }
+
+    /**
+     * The format of the state in this storage directory. A binary state takes precedence, XML is the default for
+     * directories without any state.
+     */
+    public StateFormat getFormat() {
+        return trustAnchorFile(StateFormat.BINARY).exists() ? StateFormat.BINARY : StateFormat.XML;
+    }
+
+    /**
+     * Changes are journaled when the storage directory contains a journal.
+     */
+    public boolean isJournalEnabled() {
+        return journal.exists();
+    }
+
+    public void save(TAState state) throws IOException {
+        save(state, getFormat());
     }
 
-    public void save(String xml) throws IOException {
+    public void save(TAState state, StateFormat format) throws IOException {
+        checkpoint(state, format, isJournalEnabled());
+    }
+
+    /**
+     * Save the state. Nothing is written (not even a backup) when the state did not change since it was loaded or
+     * saved in the same format and journaling mode. With journaling enabled, the difference with the previously
+     * persisted state is appended to the journal, unless it can not be expressed as a delta or a checkpoint is due.
+     * In those cases, and without journaling, a complete snapshot is written.
+     *
+     * @param previous what was loaded or saved before, null if unknown
+     * @return what is on disk after saving
+     */
+    public PersistedState save(TAState state, PersistedState previous, StateFormat format, boolean journaled) throws IOException {
+        if (previous != null && previous.isJournalled() == journaled
+                && previous.getFormat() == format && persistenceDirectory.equals(previous.getDirectory())) {
+            final Optional<TAStateDelta> delta = TAStateDelta.between(previous.getSummary(), state);
+            if (delta.isPresent() && delta.get().isEmpty()) {
+                log.info("Trust anchor state is unchanged, nothing written");
+                return previous;
+            }
+            if (journaled && delta.isPresent()) {
+                final byte[] record = new TAStateDeltaSerializer().serialize(delta.get());
+                if (previous.getJournalRecords() < CHECKPOINT_INTERVAL
+                        && previous.getJournalLength() + record.length < previous.getSnapshotSize()) {
+                    final long start = System.nanoTime();
+                    final long journalLength = journal.append(record, previous.getJournalLength());
+                    final IoStats io = new IoStats(journalLength - previous.getJournalLength(), System.nanoTime() - start, null);
+                    RunReport.phase("journal-append", start);
+                    RunReport.bytes("journal-append", io.getBytes());
+                    log.info("Appended record to trust anchor journal '{}' ({} records, {})",
+                            journal.getFile(), previous.getJournalRecords() + 1, io);
+                    return previous.appended(TAStateSummary.of(state), journalLength, io);
+                }
+            }
+        }
+        return checkpoint(state, format, journaled);
+    }
+
+    /**
+     * Save the state in the given format. When the directory contained the state in another format, that file is
+     * moved to a backup after the new file is written, so the directory always contains exactly one state. The
+     * journal is emptied, or moved to a backup when journaling is turned off.
+     */
+    private PersistedState checkpoint(TAState state, StateFormat format, boolean journaled) throws IOException {
+        final File trustAnchorFile = trustAnchorFile(format);
         final File tempFile = File.createTempFile(
                 Strings.padStart(TRUST_ANCHOR_FILENAME, 3, '_'),
-                TRUST_ANCHOR_FILE_EXT, persistenceDirectory);
+                format.getFileExtension(), persistenceDirectory);
+        final IoStats written;
         try {
             // write a backup of the trust anchor state
             if (trustAnchorFile.exists()) {
+                final long backupStart = System.nanoTime();
                 final File backupFile = FileUtil.findAvailableBackupFile(trustAnchorFile.toPath(), Instant.now());
-                Files.copy(trustAnchorFile, backupFile);
-               log.info("Stored a backup of the previous trust anchor state in '{}' (sha256={})", backupFile, getTrustAnchorSha256());
-           } else {
-               log.info("Initial save of trust anchor state.");
-           }
-
-            Files.asCharSink(tempFile, Charsets.UTF_8).write(xml);
-            Files.move(tempFile, trustAnchorFile);
-            log.info("Trust Anchor written to: '{}' (sha256={})", trustAnchorFile, getTrustAnchorSha256());
+                final IoStats backup = StateFiles.copy(trustAnchorFile, backupFile);
+                RunReport.phase("backup", backupStart);
+                RunReport.bytes("backup", backup.getBytes());
+                log.info("Stored a backup of the previous trust anchor state in '{}' (sha256={}, {})", backupFile, backup.getSha256(), backup);
+            } else {
+                log.info("Initial save of trust anchor state in {} format.", format);
+            }
+
+            final long saveStart = System.nanoTime();
+            written = StateFiles.write(tempFile, out -> format.encode(state, out));
+            StateFiles.move(tempFile, trustAnchorFile);
+            RunReport.phase("state-save", saveStart);
+            RunReport.bytes("state-written", written.getBytes());
+            log.info("Trust Anchor written to: '{}' (sha256={}, {})", trustAnchorFile, written.getSha256(), written);
+
+            for (final StateFormat other : StateFormat.values()) {
+                final File otherFile = trustAnchorFile(other);
+                if (other != format && otherFile.exists()) {
+                    final File backupFile = FileUtil.findAvailableBackupFile(otherFile.toPath(), Instant.now());
+                    StateFiles.move(otherFile, backupFile);
+                    log.info("Converted trust anchor state from {} to {} format, previous state moved to '{}'", other, format, backupFile);
+                }
+            }
         } finally {
             if (tempFile.exists()) tempFile.delete();
         }
-    }
 
-    private HashCode getTrustAnchorSha256() throws IOException {
-        return Hashing.sha256().hashBytes(Files.asByteSource(trustAnchorFile).read());
+        // the journal no longer matches the snapshot, so a crash before this point leaves a stale journal that is ignored
+        if (journal.exists() && !journaled) {
+            final File backupFile = FileUtil.findAvailableBackupFile(journal.getFile().toPath(), Instant.now());
+            StateFiles.move(journal.getFile(), backupFile);
+            log.info("Disabled the trust anchor journal, previous journal moved to '{}'", backupFile);
+        } else if (journal.hasRecords()) {
+            final File backupFile = FileUtil.findAvailableBackupFile(journal.getFile().toPath(), Instant.now());
+            StateFiles.copy(journal.getFile(), backupFile);
+            log.info("Stored a backup of the previous trust anchor journal in '{}'", backupFile);
+        }
+        long journalLength = 0;
+        if (journaled) {
+            journalLength = journal.reset(written.getSha256());
+        }
+        return new PersistedState(persistenceDirectory, TAStateSummary.of(state), format, written.getSha256(), written.getBytes(),
+                journaled, 0, journalLength, written);
     }
 
-    public String load() throws IOException {
-        byte[] content = Files.asByteSource(trustAnchorFile).read();
+    /**
+     * Load the snapshot and replay the journal records that belong to it.
+     */
+    public Pair<TAState, PersistedState> load() throws IOException {
+        final StateFormat format = getFormat();
+        final long readStart = System.nanoTime();
+        final StateFiles.ReadResult snapshot = StateFiles.read(trustAnchorFile(format));
+        final IoStats read = snapshot.getStats();
+        final HashCode sha256 = read.getSha256();
+        RunReport.phase("state-read", readStart);
+        RunReport.bytes("state-read", read.getBytes());
+
+        log.info("Loaded trust anchor state from {} format (sha256={}, {})", format, sha256, read);
+        final long decodeStart = System.nanoTime();
+        final TAState state = format.decode(snapshot.getContent());
+        RunReport.phase("state-decode", decodeStart);
+
+        final long start = System.nanoTime();
+        final StateJournal.Contents contents = journal.read(sha256);
+        if (contents == null) {
+            if (journal.exists()) {
+                log.warn("Ignoring trust anchor journal '{}', it does not belong to the current state", journal.getFile());
+            }
+            return Pair.of(state, new PersistedState(persistenceDirectory, TAStateSummary.of(state), format, sha256, read.getBytes(),
+                    false, 0, 0, read));
+        }
 
-        log.info("Loaded trust anchor state (sha256={})", Hashing.sha256().hashBytes(content));
-        return new String(content, Charsets.UTF_8);
+        final TAStateDeltaSerializer deltaSerializer = new TAStateDeltaSerializer();
+        for (final byte[] record : contents.getRecords()) {
+            try {
+                deltaSerializer.deserialize(record).applyTo(state);
+            } catch (IllegalStateException e) {
+                throw new IOException("Trust anchor journal '" + journal.getFile() + "' does not apply to the current state", e);
+            }
+        }
+        if (contents.getIgnoredBytes() > 0) {
+            log.warn("Ignoring {} bytes of incomplete records at the end of trust anchor journal '{}'", contents.getIgnoredBytes(), journal.getFile());
+        }
+        final IoStats replayed = new IoStats(contents.getValidLength() + contents.getIgnoredBytes(), System.nanoTime() - start, null);
+        RunReport.phase("journal-replay", start);
+        RunReport.count("journal-records", contents.getRecords().size());
+        log.info("Replayed {} records from trust anchor journal '{}' ({})", contents.getRecords().size(), journal.getFile(), replayed);
+
+        return Pair.of(state, new PersistedState(persistenceDirectory, TAStateSummary.of(state), format, sha256, read.getBytes(),
+                true, contents.getRecords().size(), contents.getValidLength(), read.plus(replayed)));
     }
 
     public boolean taStateExists() {
-        return trustAnchorFile.exists();
+        for (final StateFormat format : StateFormat.values()) {
+            if (trustAnchorFile(format).exists()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private File trustAnchorFile(StateFormat format) {
+        return new File(persistenceDirectory, TRUST_ANCHOR_FILENAME + "." + format.getFileExtension());
     }
 
 }
@@ -0,0 +1,146 @@
+package net.ripe.rpki.ta.publication;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.common.io.BaseEncoding;
+import lombok.Value;
+import net.ripe.rpki.commons.crypto.CertificateRepositoryObject;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The difference between the objects published after the previous request and the objects of a response, by
+ * publication URI and the sha256 of the content.
+ */
+public class PublishedObjectsDelta {
+
+    public enum Status {
+        ADDED, UPDATED, UNCHANGED, WITHDRAWN
+    }
+
+    /**
+     * A published object, the content is only kept for added and updated objects.
+     */
+    @Value
+    public static class Entry {
+        URI uri;
+        Status status;
+        HashCode sha256;
+        HashCode previousSha256;
+        byte[] content;
+    }
+
+    private final List<Entry> entries;
+    private final Map<Status, Integer> counts = new EnumMap<>(Status.class);
+
+    private PublishedObjectsDelta(List<Entry> entries) {
+        this.entries = Collections.unmodifiableList(entries);
+        for (final Status status : Status.values()) {
+            counts.put(status, 0);
+        }
+        for (final Entry entry : entries) {
+            counts.merge(entry.getStatus(), 1, Integer::sum);
+        }
+    }
+
+    /**
+     * @param previous the sha256 of the previously published objects by URI
+     * @param current  the objects that are published now
+     */
+    public static PublishedObjectsDelta between(Map<URI, HashCode> previous, Map<URI, CertificateRepositoryObject> current) {
+        final Map<URI, Entry> entries = new TreeMap<>();
+        for (final Map.Entry<URI, CertificateRepositoryObject> object : current.entrySet()) {
+            final byte[] content = object.getValue().getEncoded();
+            final HashCode sha256 = sha256(content);
+            final HashCode previousSha256 = previous.get(object.getKey());
+            if (previousSha256 == null) {
+                entries.put(object.getKey(), new Entry(object.getKey(), Status.ADDED, sha256, null, content));
+            } else if (previousSha256.equals(sha256)) {
+                entries.put(object.getKey(), new Entry(object.getKey(), Status.UNCHANGED, sha256, previousSha256, null));
+            } else {
+                entries.put(object.getKey(), new Entry(object.getKey(), Status.UPDATED, sha256, previousSha256, content));
+            }
+        }
+        for (final Map.Entry<URI, HashCode> object : previous.entrySet()) {
+            if (!current.containsKey(object.getKey())) {
+                entries.put(object.getKey(), new Entry(object.getKey(), Status.WITHDRAWN, null, object.getValue(), null));
+            }
+        }
+        return new PublishedObjectsDelta(new ArrayList<>(entries.values()));
+    }
+
+    public static HashCode sha256(byte[] content) {
+        return Hashing.sha256().hashBytes(content);
+    }
+
+    /**
+     * All objects in order of their URI.
+     */
+    public List<Entry> getEntries() {
+        return entries;
+    }
+
+    public int count(Status status) {
+        return counts.get(status);
+    }
+
+    /**
+     * @return true when nothing was added, updated or withdrawn.
+     */
+    public boolean isEmpty() {
+        return count(Status.UNCHANGED) == entries.size();
+    }
+
+    /**
+     * Write the delta as XML. Added and updated objects contain their base64 encoded content, unchanged and withdrawn
+     * objects only their hashes.
+     */
+    public void write(long requestCreationTimestamp, Writer out) throws IOException {
+        out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        out.write("<publishedObjectsDelta requestCreationTimestamp=\"" + requestCreationTimestamp + "\"");
+        for (final Status status : Status.values()) {
+            out.write(" " + elementName(status) + "=\"" + count(status) + "\"");
+        }
+        out.write(">\n");
+        for (final Entry entry : entries) {
+            final String element = elementName(entry.getStatus());
+            out.write("  <" + element + " uri=\"" + escape(entry.getUri().toString()) + "\"");
+            if (entry.getSha256() != null) {
+                out.write(" sha256=\"" + entry.getSha256() + "\"");
+            }
+            if (entry.getPreviousSha256() != null && entry.getStatus() != Status.UNCHANGED) {
+                out.write(" previousSha256=\"" + entry.getPreviousSha256() + "\"");
+            }
+            if (entry.getContent() == null) {
+                out.write("/>\n");
+            } else {
+                out.write(">");
+                out.write(BaseEncoding.base64().encode(entry.getContent()));
+                out.write("</" + element + ">\n");
+            }
+        }
+        out.write("</publishedObjectsDelta>\n");
+    }
+
+    public String summary() {
+        return String.format(Locale.ROOT, "%d added, %d updated, %d unchanged, %d withdrawn",
+                count(Status.ADDED), count(Status.UPDATED), count(Status.UNCHANGED), count(Status.WITHDRAWN));
+    }
+
+    private static String elementName(Status status) {
+        return status.name().toLowerCase(Locale.ROOT);
+    }
+
+    private static String escape(String value) {
+        return value.replace("&", "&amp;").replace("\"", "&quot;").replace("<", "&lt;").replace(">", "&gt;");
+    }
+}
@@ -0,0 +1,168 @@
+package net.ripe.rpki.ta.publication;
+
+import com.google.common.hash.HashCode;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import net.ripe.rpki.commons.crypto.CertificateRepositoryObject;
+import net.ripe.rpki.ta.util.FileUtil;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.stream.Stream;
+
+/**
+ * A local directory tree with the published objects, that can be served by rsync directly. An object with publication
+ * URI rsync://host/module/path/name.cer is stored as module/path/name.cer in the directory.
+ *
+ * Publishing only writes the objects whose content changed: these are first staged next to their target, and renamed
+ * over their targets once all of them are written. The certificates are renamed first, then the CRL and the manifest
+ * last, so a relying party that reads the manifest finds the objects it lists. Afterwards, objects that are no longer
+ * published are removed from the directories that contain published objects.
+ */
+@Slf4j
+public class RepositoryDirectory {
+
+    /**
+     * Extensions of the objects that are removed when they are no longer published, other files are left alone.
+     */
+    private static final Set<String> OBJECT_EXTENSIONS = Set.of(".cer", ".crl", ".mft");
+
+    /**
+     * The order in which staged objects replace the published ones: everything else, then the CRL, then the manifest.
+     */
+    static final Comparator<Path> RENAME_ORDER = Comparator.comparingInt(RepositoryDirectory::renameRank);
+
+    private final Path directory;
+
+    @Value
+    public static class Result {
+        int written;
+        int unchanged;
+        int removed;
+        long bytesWritten;
+
+        @Override
+        public String toString() {
+            return written + " written (" + bytesWritten + " bytes), " + unchanged + " unchanged, " + removed + " removed";
+        }
+    }
+
+    public RepositoryDirectory(File directory) {
+        this.directory = directory.toPath().toAbsolutePath().normalize();
+    }
+
+    public Result publish(Map<URI, CertificateRepositoryObject> objects) throws IOException {
+        final Map<Path, byte[]> changed = new TreeMap<>(RENAME_ORDER.thenComparing(Comparator.naturalOrder()));
+        final Set<Path> published = new HashSet<>();
+        final Set<Path> directories = new TreeSet<>();
+        int unchanged = 0;
+        for (final Map.Entry<URI, CertificateRepositoryObject> object : objects.entrySet()) {
+            final Path target = path(object.getKey());
+            final byte[] content = object.getValue().getEncoded();
+            published.add(target);
+            directories.add(target.getParent());
+            if (hasContent(target, content)) {
+                unchanged++;
+            } else {
+                changed.put(target, content);
+            }
+        }
+
+        // stage all changed objects before any of them replaces a published one
+        final Map<Path, Path> staged = new LinkedHashMap<>();
+        long bytesWritten = 0;
+        try {
+            for (final Map.Entry<Path, byte[]> object : changed.entrySet()) {
+                Files.createDirectories(object.getKey().getParent());
+                final Path stagingFile = FileUtil.createTempFileFor(object.getKey().toFile()).toPath();
+                staged.put(object.getKey(), stagingFile);
+                write(stagingFile, object.getValue());
+                bytesWritten += object.getValue().length;
+            }
+            for (final Map.Entry<Path, Path> object : staged.entrySet()) {
+                FileUtil.moveAtomically(object.getValue().toFile(), object.getKey().toFile());
+            }
+        } finally {
+            for (final Path stagingFile : staged.values()) {
+                Files.deleteIfExists(stagingFile);
+            }
+        }
+
+        final List<Path> withdrawn = new ArrayList<>();
+        for (final Path parent : directories) {
+            try (final Stream<Path> files = Files.list(parent)) {
+                files.filter(file -> Files.isRegularFile(file) && isObject(file) && !published.contains(file)).forEach(withdrawn::add);
+            }
+        }
+        for (final Path file : withdrawn) {
+            Files.delete(file);
+            log.info("Removed '{}', it is no longer published", file);
+        }
+        return new Result(changed.size(), unchanged, withdrawn.size(), bytesWritten);
+    }
+
+    /**
+     * The file for a publication URI, which must not point outside the directory.
+     */
+    Path path(URI uri) {
+        final String path = uri.getPath();
+        if (path == null || path.isEmpty() || path.endsWith("/")) {
+            throw new IllegalArgumentException("Publication URI '" + uri + "' does not name an object.");
+        }
+        final Path target = directory.resolve(path.substring(1)).normalize();
+        if (!target.startsWith(directory) || target.equals(directory)) {
+            throw new IllegalArgumentException("Publication URI '" + uri + "' is outside of the repository directory.");
+        }
+        return target;
+    }
+
+    /**
+     * Compare the sha256 of the file with the content. A file of a different size is known to differ without reading it.
+     */
+    private static boolean hasContent(Path file, byte[] content) throws IOException {
+        if (!Files.isRegularFile(file) || Files.size(file) != content.length) {
+            return false;
+        }
+        final HashCode existing = PublishedObjectsDelta.sha256(Files.readAllBytes(file));
+        return existing.equals(PublishedObjectsDelta.sha256(content));
+    }
+
+    private static void write(Path file, byte[] content) throws IOException {
+        try (final FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            final ByteBuffer buffer = ByteBuffer.wrap(content);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+    }
+
+    private static int renameRank(Path file) {
+        final String name = file.getFileName().toString();
+        if (name.endsWith(".mft")) {
+            return 2;
+        }
+        return name.endsWith(".crl") ? 1 : 0;
+    }
+
+    private static boolean isObject(Path file) {
+        final String name = file.getFileName().toString();
+        final int dot = name.lastIndexOf('.');
+        return dot > 0 && OBJECT_EXTENSIONS.contains(name.substring(dot));
+    }
+}
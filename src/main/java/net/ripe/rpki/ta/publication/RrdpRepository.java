@@ -0,0 +1,323 @@
+package net.ripe.rpki.ta.publication;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.common.hash.HashingOutputStream;
+import com.google.common.io.BaseEncoding;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import net.ripe.rpki.commons.crypto.CertificateRepositoryObject;
+import net.ripe.rpki.ta.util.FileUtil;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URI;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+/**
+ * Writes the published objects as an RRDP repository (RFC 8182) of static files: {@code notification.xml} in the
+ * directory, and {@code <session>/<serial>/snapshot.xml} and {@code delta.xml} for every serial.
+ *
+ * The session, serial, deltas and the sha256 of every published object are kept in {@value #STATE_FILENAME} in the
+ * directory, so the next delta is computed from these hashes without reading the previous snapshot. The state file
+ * is replaced before the notification file: after a crash in between, the next serial still follows on the serial in
+ * the state file. Without (or with an unreadable) state file a new session is started.
+ */
+@Slf4j
+public class RrdpRepository {
+
+    public static final String NOTIFICATION_FILENAME = "notification.xml";
+    static final String STATE_FILENAME = ".rrdp-state";
+
+    private static final String NAMESPACE = "http://www.ripe.net/rpki/rrdp";
+
+    /**
+     * Deltas are kept while their total size is below the size of the snapshot, with at most this many.
+     */
+    static final int MAX_DELTAS = 64;
+
+    private final Path directory;
+
+    @Value
+    static class DeltaFile {
+        long serial;
+        HashCode sha256;
+        long size;
+    }
+
+    /**
+     * What was published last, as recorded in the state file.
+     */
+    @Value
+    static class State {
+        String sessionId;
+        long serial;
+        List<DeltaFile> deltas;
+        Map<URI, HashCode> objects;
+    }
+
+    @Value
+    public static class Result {
+        String sessionId;
+        long serial;
+        PublishedObjectsDelta delta;
+
+        @Override
+        public String toString() {
+            return "session " + sessionId + " serial " + serial + " (" + delta.summary() + ")";
+        }
+    }
+
+    public RrdpRepository(File directory) {
+        this.directory = directory.toPath().toAbsolutePath().normalize();
+    }
+
+    /**
+     * Publish the objects as the next serial, nothing is written when they are the same as in the last serial.
+     *
+     * @param notificationUri the URI of notification.xml, the snapshots and deltas are published relative to it
+     */
+    public Result publish(URI notificationUri, Map<URI, CertificateRepositoryObject> objects) throws IOException {
+        Files.createDirectories(directory);
+        final State previous = readState();
+        final String sessionId = previous == null ? UUID.randomUUID().toString() : previous.getSessionId();
+        final long serial = previous == null ? 1 : previous.getSerial() + 1;
+        final PublishedObjectsDelta delta = PublishedObjectsDelta.between(previous == null ? Map.of() : previous.getObjects(), objects);
+        if (previous != null && delta.isEmpty()) {
+            return new Result(sessionId, previous.getSerial(), delta);
+        }
+        if (previous == null) {
+            log.info("Starting RRDP session {} in '{}'", sessionId, directory);
+        }
+
+        final Path serialDirectory = directory.resolve(sessionId).resolve(Long.toString(serial));
+        Files.createDirectories(serialDirectory);
+        final Map<URI, CertificateRepositoryObject> sorted = new TreeMap<>(objects);
+        final DeltaFile snapshot = writeXml(serialDirectory.resolve("snapshot.xml"), serial, xml -> {
+            startElement(xml, "snapshot", sessionId, serial);
+            for (final Map.Entry<URI, CertificateRepositoryObject> object : sorted.entrySet()) {
+                xml.writeStartElement("publish");
+                xml.writeAttribute("uri", object.getKey().toString());
+                xml.writeCharacters(BaseEncoding.base64().encode(object.getValue().getEncoded()));
+                xml.writeEndElement();
+            }
+            xml.writeEndElement();
+        });
+
+        final List<DeltaFile> deltas = new ArrayList<>();
+        if (previous != null) {
+            deltas.add(writeXml(serialDirectory.resolve("delta.xml"), serial, xml -> {
+                startElement(xml, "delta", sessionId, serial);
+                for (final PublishedObjectsDelta.Entry entry : delta.getEntries()) {
+                    if (entry.getStatus() == PublishedObjectsDelta.Status.WITHDRAWN) {
+                        xml.writeEmptyElement("withdraw");
+                        xml.writeAttribute("uri", entry.getUri().toString());
+                        xml.writeAttribute("hash", entry.getPreviousSha256().toString());
+                    } else if (entry.getStatus() != PublishedObjectsDelta.Status.UNCHANGED) {
+                        xml.writeStartElement("publish");
+                        xml.writeAttribute("uri", entry.getUri().toString());
+                        if (entry.getPreviousSha256() != null) {
+                            xml.writeAttribute("hash", entry.getPreviousSha256().toString());
+                        }
+                        xml.writeCharacters(BaseEncoding.base64().encode(entry.getContent()));
+                        xml.writeEndElement();
+                    }
+                }
+                xml.writeEndElement();
+            }));
+            long deltasSize = deltas.get(0).getSize();
+            for (final DeltaFile older : previous.getDeltas()) {
+                if (deltas.size() >= MAX_DELTAS || deltasSize + older.getSize() > snapshot.getSize()) {
+                    break;
+                }
+                deltas.add(older);
+                deltasSize += older.getSize();
+            }
+        }
+
+        final Map<URI, HashCode> hashes = new TreeMap<>();
+        for (final PublishedObjectsDelta.Entry entry : delta.getEntries()) {
+            if (entry.getSha256() != null) {
+                hashes.put(entry.getUri(), entry.getSha256());
+            }
+        }
+        writeState(new State(sessionId, serial, deltas, hashes));
+        writeXml(directory.resolve(NOTIFICATION_FILENAME), serial, xml -> {
+            startElement(xml, "notification", sessionId, serial);
+            xml.writeEmptyElement("snapshot");
+            xml.writeAttribute("uri", fileUri(notificationUri, sessionId, serial, "snapshot.xml").toString());
+            xml.writeAttribute("hash", snapshot.getSha256().toString());
+            for (final DeltaFile deltaFile : deltas) {
+                xml.writeEmptyElement("delta");
+                xml.writeAttribute("serial", Long.toString(deltaFile.getSerial()));
+                xml.writeAttribute("uri", fileUri(notificationUri, sessionId, deltaFile.getSerial(), "delta.xml").toString());
+                xml.writeAttribute("hash", deltaFile.getSha256().toString());
+            }
+            xml.writeEndElement();
+        });
+
+        removeUnreferenced(sessionId, serial, deltas);
+        return new Result(sessionId, serial, delta);
+    }
+
+    static URI fileUri(URI notificationUri, String sessionId, long serial, String name) {
+        return notificationUri.resolve(sessionId + "/" + serial + "/" + name);
+    }
+
+    private static void startElement(XMLStreamWriter xml, String name, String sessionId, long serial) throws XMLStreamException {
+        xml.writeStartElement(name);
+        xml.writeDefaultNamespace(NAMESPACE);
+        xml.writeAttribute("version", "1");
+        xml.writeAttribute("session_id", sessionId);
+        xml.writeAttribute("serial", Long.toString(serial));
+    }
+
+    private interface XmlContent {
+        void writeTo(XMLStreamWriter xml) throws XMLStreamException;
+    }
+
+    /**
+     * Stream the XML through a buffer into a temporary file, hashing it on the way, and atomically rename it to the
+     * target.
+     */
+    private static DeltaFile writeXml(Path target, long serial, XmlContent content) throws IOException {
+        final File tempFile = FileUtil.createTempFileFor(target.toFile());
+        try {
+            final HashCode sha256;
+            final long size;
+            try (final FileChannel channel = FileChannel.open(tempFile.toPath(), StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                final HashingOutputStream hashing = new HashingOutputStream(Hashing.sha256(), Channels.newOutputStream(channel));
+                final Writer out = new OutputStreamWriter(new BufferedOutputStream(hashing, 64 * 1024), StandardCharsets.UTF_8);
+                final XMLStreamWriter xml = XMLOutputFactory.newFactory().createXMLStreamWriter(out);
+                try {
+                    content.writeTo(xml);
+                    xml.flush();
+                    xml.close();
+                } catch (XMLStreamException e) {
+                    throw new IOException("Could not write '" + target + "'", e);
+                }
+                out.write('\n');
+                out.flush();
+                channel.force(true);
+                sha256 = hashing.hash();
+                size = channel.size();
+            }
+            FileUtil.moveAtomically(tempFile, target.toFile());
+            return new DeltaFile(serial, sha256, size);
+        } finally {
+            Files.deleteIfExists(tempFile.toPath());
+        }
+    }
+
+    /**
+     * The state file has a line per field: "session &lt;id&gt;", "serial &lt;n&gt;", "delta &lt;serial&gt;
+     * &lt;sha256&gt; &lt;size&gt;" for every delta (newest first) and "object &lt;sha256&gt; &lt;uri&gt;" for every
+     * published object.
+     */
+    State readState() {
+        final Path file = directory.resolve(STATE_FILENAME);
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        try {
+            String sessionId = null;
+            long serial = -1;
+            final List<DeltaFile> deltas = new ArrayList<>();
+            final Map<URI, HashCode> objects = new TreeMap<>();
+            for (final String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                final String[] fields = line.split(" ");
+                switch (fields[0]) {
+                    case "session":
+                        sessionId = fields[1];
+                        break;
+                    case "serial":
+                        serial = Long.parseLong(fields[1]);
+                        break;
+                    case "delta":
+                        deltas.add(new DeltaFile(Long.parseLong(fields[1]), HashCode.fromString(fields[2]), Long.parseLong(fields[3])));
+                        break;
+                    case "object":
+                        objects.put(URI.create(fields[2]), HashCode.fromString(fields[1]));
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown line '" + line + "'");
+                }
+            }
+            if (sessionId == null || serial < 1) {
+                throw new IllegalArgumentException("No session or serial");
+            }
+            return new State(sessionId, serial, deltas, objects);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Ignoring unreadable RRDP state '{}', starting a new session", file, e);
+            return null;
+        }
+    }
+
+    private void writeState(State state) throws IOException {
+        final File file = directory.resolve(STATE_FILENAME).toFile();
+        FileUtil.writeAtomically(file, out -> {
+            out.write("session " + state.getSessionId() + "\n");
+            out.write("serial " + state.getSerial() + "\n");
+            for (final DeltaFile delta : state.getDeltas()) {
+                out.write("delta " + delta.getSerial() + " " + delta.getSha256() + " " + delta.getSize() + "\n");
+            }
+            for (final Map.Entry<URI, HashCode> object : state.getObjects().entrySet()) {
+                out.write("object " + object.getValue() + " " + object.getKey() + "\n");
+            }
+        });
+    }
+
+    /**
+     * Remove the files of other sessions, and the serials that are neither the current or previous one nor referenced
+     * by a delta in the notification file.
+     */
+    private void removeUnreferenced(String sessionId, long serial, List<DeltaFile> deltas) throws IOException {
+        final Set<String> keep = new HashSet<>(List.of(Long.toString(serial), Long.toString(serial - 1)));
+        for (final DeltaFile delta : deltas) {
+            keep.add(Long.toString(delta.getSerial()));
+        }
+        final List<Path> obsolete = new ArrayList<>();
+        try (final Stream<Path> sessions = Files.list(directory)) {
+            sessions.filter(Files::isDirectory).filter(path -> isUuid(path.getFileName().toString()))
+                    .filter(path -> !path.getFileName().toString().equals(sessionId))
+                    .forEach(obsolete::add);
+        }
+        try (final Stream<Path> serials = Files.list(directory.resolve(sessionId))) {
+            serials.filter(Files::isDirectory).filter(path -> !keep.contains(path.getFileName().toString())).forEach(obsolete::add);
+        }
+        for (final Path path : obsolete) {
+            try (final Stream<Path> files = Files.walk(path)) {
+                files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+            }
+            log.info("Removed '{}', it is no longer referenced by the RRDP notification", path);
+        }
+    }
+
+    private static boolean isUuid(String name) {
+        try {
+            return UUID.fromString(name).toString().equals(name);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+}
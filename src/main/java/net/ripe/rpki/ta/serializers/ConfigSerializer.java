@@ -0,0 +1,25 @@
+package net.ripe.rpki.ta.serializers;
+
+
+import net.ripe.rpki.commons.xml.XStreamXmlSerializerBuilder;
+import net.ripe.rpki.ta.config.Config;
+
+import javax.security.auth.x500.X500Principal;
+
+/**
+ * Serializes the configuration exactly as it appears in the &lt;config&gt; element of ta.xml.
+ */
+public class ConfigSerializer extends Serializer<Config> {
+
+    @Override
+    protected XStreamXmlSerializerBuilder<Config> configureBuilder(XStreamXmlSerializerBuilder<Config> builder) {
+        return builder
+                .withAliasType("config", Config.class)
+                .withAllowedType(X500Principal.class);
+    }
+
+    @Override
+    protected Class<Config> clazz() {
+        return Config.class;
+    }
+}
@@ -0,0 +1,49 @@
+package net.ripe.rpki.ta.serializers;
+
+
+import net.ripe.rpki.commons.ta.serializers.TrustAnchorRequestSerializer;
+import net.ripe.rpki.commons.ta.serializers.TrustAnchorResponseSerializer;
+
+/**
+ * Shared serializer instances. Configuring XStream (aliases, converters, allowed types) is expensive, while a
+ * configured instance can be used by several threads at once. Every serializer is created on first use.
+ */
+public final class Serializers {
+
+    private Serializers() {
+    }
+
+    public static TAStateSerializer taState() {
+        return TAStateHolder.INSTANCE;
+    }
+
+    public static ConfigSerializer config() {
+        return ConfigHolder.INSTANCE;
+    }
+
+    public static TrustAnchorRequestSerializer trustAnchorRequest() {
+        return TrustAnchorRequestHolder.INSTANCE;
+    }
+
+    public static TrustAnchorResponseSerializer trustAnchorResponse() {
+        return TrustAnchorResponseHolder.INSTANCE;
+    }
+
+    // The holder classes are initialised, and the serializers created, when they are first used.
+
+    private static final class TAStateHolder {
+        static final TAStateSerializer INSTANCE = new TAStateSerializer();
+    }
+
+    private static final class ConfigHolder {
+        static final ConfigSerializer INSTANCE = new ConfigSerializer();
+    }
+
+    private static final class TrustAnchorRequestHolder {
+        static final TrustAnchorRequestSerializer INSTANCE = new TrustAnchorRequestSerializer();
+    }
+
+    private static final class TrustAnchorResponseHolder {
+        static final TrustAnchorResponseSerializer INSTANCE = new TrustAnchorResponseSerializer();
+    }
+}
@@ -0,0 +1,133 @@
+package net.ripe.rpki.ta.serializers;
+
+
+import com.google.common.hash.HashCode;
+import com.thoughtworks.xstream.converters.Converter;
+import com.thoughtworks.xstream.converters.MarshallingContext;
+import com.thoughtworks.xstream.converters.UnmarshallingContext;
+import com.thoughtworks.xstream.io.HierarchicalStreamReader;
+import com.thoughtworks.xstream.io.HierarchicalStreamWriter;
+import net.ripe.rpki.ta.serializers.legacy.SignedManifest;
+import net.ripe.rpki.ta.serializers.legacy.SignedObjectTracker;
+import net.ripe.rpki.ta.serializers.legacy.SignedResourceCertificate;
+import org.joda.time.DateTime;
+
+import java.math.BigInteger;
+
+/**
+ * Reads and writes trackers in the format that XStream used for the fields of {@link SignedObjectTracker} before
+ * it kept its object as DER, so the DER does not have to be parsed while loading ta.xml. The certificate serial is
+ * written as an additional element, older states without it get the serial from the DER structure. Resource
+ * certificates also store the key identifier of their public key and the SHA-256 of their DER.
+ */
+public class SignedObjectTrackerConverter implements Converter {
+
+    private static final String OBJECT = "certificateRepositoryObject";
+    private static final String ENCODED = "encoded";
+    private static final String FILE_NAME = "fileName";
+    private static final String REVOCATION_TIME = "revocationTime";
+    private static final String NOT_VALID_AFTER = "notValidAfter";
+    private static final String CERTIFICATE_SERIAL = "certificateSerial";
+    private static final String KEY_IDENTIFIER = "keyIdentifier";
+    private static final String SHA256 = "sha256";
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    public boolean canConvert(Class type) {
+        return type == SignedResourceCertificate.class || type == SignedManifest.class;
+    }
+
+    @Override
+    public void marshal(Object source, HierarchicalStreamWriter writer, MarshallingContext context) {
+        final SignedObjectTracker tracker = (SignedObjectTracker) source;
+
+        writer.startNode(OBJECT);
+        writer.addAttribute("class", tracker instanceof SignedManifest ? "ManifestCms" : "X509ResourceCertificate");
+        writer.startNode(ENCODED);
+        context.convertAnother(tracker.getEncoded());
+        writer.endNode();
+        writer.endNode();
+
+        if (tracker.getFileName() != null) {
+            writer.startNode(FILE_NAME);
+            writer.setValue(tracker.getFileName());
+            writer.endNode();
+        }
+        if (tracker.getRevocationTime() != null) {
+            writer.startNode(REVOCATION_TIME);
+            context.convertAnother(tracker.getRevocationTime());
+            writer.endNode();
+        }
+        writer.startNode(NOT_VALID_AFTER);
+        context.convertAnother(tracker.getNotValidAfter());
+        writer.endNode();
+
+        writer.startNode(CERTIFICATE_SERIAL);
+        writer.setValue(tracker.getCertificateSerial().toString());
+        writer.endNode();
+
+        if (tracker instanceof SignedResourceCertificate && ((SignedResourceCertificate) tracker).getStoredKeyIdentifier() != null) {
+            writer.startNode(KEY_IDENTIFIER);
+            writer.setValue(((SignedResourceCertificate) tracker).getStoredKeyIdentifier());
+            writer.endNode();
+        }
+        if (tracker instanceof SignedResourceCertificate && ((SignedResourceCertificate) tracker).getStoredSha256() != null) {
+            writer.startNode(SHA256);
+            writer.setValue(HashCode.fromBytes(((SignedResourceCertificate) tracker).getStoredSha256()).toString());
+            writer.endNode();
+        }
+    }
+
+    @Override
+    public Object unmarshal(HierarchicalStreamReader reader, UnmarshallingContext context) {
+        byte[] encoded = null;
+        String fileName = null;
+        DateTime revocationTime = null;
+        DateTime notValidAfter = null;
+        BigInteger certificateSerial = null;
+        String keyIdentifier = null;
+        byte[] sha256 = null;
+
+        while (reader.hasMoreChildren()) {
+            reader.moveDown();
+            switch (reader.getNodeName()) {
+                case OBJECT:
+                    while (reader.hasMoreChildren()) {
+                        reader.moveDown();
+                        if (ENCODED.equals(reader.getNodeName())) {
+                            encoded = (byte[]) context.convertAnother(null, byte[].class);
+                        }
+                        reader.moveUp();
+                    }
+                    break;
+                case FILE_NAME:
+                    fileName = reader.getValue();
+                    break;
+                case REVOCATION_TIME:
+                    revocationTime = (DateTime) context.convertAnother(null, DateTime.class);
+                    break;
+                case NOT_VALID_AFTER:
+                    notValidAfter = (DateTime) context.convertAnother(null, DateTime.class);
+                    break;
+                case CERTIFICATE_SERIAL:
+                    certificateSerial = new BigInteger(reader.getValue());
+                    break;
+                case KEY_IDENTIFIER:
+                    keyIdentifier = reader.getValue();
+                    break;
+                case SHA256:
+                    sha256 = HashCode.fromString(reader.getValue()).asBytes();
+                    break;
+                default:
+                    // ignore unknown elements, like XStream does for this (forgiving) serializer
+                    break;
+            }
+            reader.moveUp();
+        }
+
+        if (context.getRequiredType() == SignedManifest.class) {
+            return SignedManifest.fromEncoded(encoded, certificateSerial, notValidAfter, revocationTime);
+        }
+        return SignedResourceCertificate.fromEncoded(fileName, encoded, certificateSerial, notValidAfter, revocationTime, keyIdentifier, sha256);
+    }
+}
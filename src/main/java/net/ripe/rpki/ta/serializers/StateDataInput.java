@@ -0,0 +1,129 @@
+package net.ripe.rpki.ta.serializers;
+
+
+import com.google.common.hash.HashCode;
+import net.ripe.rpki.commons.crypto.crl.X509Crl;
+import net.ripe.rpki.ta.config.Config;
+import net.ripe.rpki.ta.domain.Revocation;
+import net.ripe.rpki.ta.serializers.legacy.SignedManifest;
+import net.ripe.rpki.ta.serializers.legacy.SignedResourceCertificate;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Reads the building blocks written by {@link StateDataOutput}.
+ */
+public class StateDataInput extends DataInputStream {
+
+    public StateDataInput(InputStream in) {
+        super(in);
+    }
+
+    public byte[] readBlob() throws IOException {
+        final int length = readInt();
+        if (length == StateDataOutput.NULL_LENGTH) {
+            return null;
+        }
+        if (length < 0) {
+            throw new IOException("Invalid blob length " + length);
+        }
+        final byte[] blob = new byte[length];
+        readFully(blob);
+        return blob;
+    }
+
+    public String readString() throws IOException {
+        final byte[] blob = readBlob();
+        return blob == null ? null : new String(blob, StandardCharsets.UTF_8);
+    }
+
+    public BigInteger readBigInteger() throws IOException {
+        final byte[] blob = readBlob();
+        return blob == null ? null : new BigInteger(blob);
+    }
+
+    public Long readNullableLong() throws IOException {
+        return readBoolean() ? readLong() : null;
+    }
+
+    public DateTime readDateTime() throws IOException {
+        final Long millis = readNullableLong();
+        return millis == null ? null : new DateTime(millis, DateTimeZone.UTC);
+    }
+
+    public Config readConfig() throws IOException {
+        final String xml = readString();
+        return xml == null ? null : Serializers.config().deserialize(xml);
+    }
+
+    public X509Crl readCrl() throws IOException {
+        final byte[] encoded = readBlob();
+        return encoded == null ? null : new X509Crl(encoded);
+    }
+
+    public SignedResourceCertificate readResourceCertificate() throws IOException {
+        final String fileName = readString();
+        final byte[] encoded = readBlob();
+        final DateTime revocationTime = readDateTime();
+        final BigInteger serial = readBigInteger();
+        final DateTime notValidAfter = readDateTime();
+        final String keyIdentifier = readString();
+        final byte[] sha256 = readBlob();
+        return SignedResourceCertificate.fromEncoded(fileName, encoded, serial, notValidAfter, revocationTime, keyIdentifier, sha256);
+    }
+
+    public SignedManifest readManifest() throws IOException {
+        // manifests are tracked without a file name
+        readString();
+        final byte[] encoded = readBlob();
+        final DateTime revocationTime = readDateTime();
+        final BigInteger serial = readBigInteger();
+        return SignedManifest.fromEncoded(encoded, serial, readDateTime(), revocationTime);
+    }
+
+    public void readResourceCertificates(final List<SignedResourceCertificate> target) throws IOException {
+        final int size = readInt();
+        for (int i = 0; i < size; i++) {
+            target.add(readResourceCertificate());
+        }
+    }
+
+    public void readManifests(final List<SignedManifest> target) throws IOException {
+        final int size = readInt();
+        for (int i = 0; i < size; i++) {
+            target.add(readManifest());
+        }
+    }
+
+    public Revocation readRevocation() throws IOException {
+        return new Revocation(readBigInteger(), readDateTime(), readDateTime());
+    }
+
+    public void readRevocations(final List<Revocation> target) throws IOException {
+        final int size = readInt();
+        for (int i = 0; i < size; i++) {
+            target.add(readRevocation());
+        }
+    }
+
+    public Map<String, String> readHashes() throws IOException {
+        final int size = readInt();
+        if (size == StateDataOutput.NULL_LENGTH) {
+            return null;
+        }
+        final Map<String, String> hashes = new TreeMap<>();
+        for (int i = 0; i < size; i++) {
+            hashes.put(readString(), HashCode.fromBytes(readBlob()).toString());
+        }
+        return hashes;
+    }
+}
@@ -0,0 +1,122 @@
+package net.ripe.rpki.ta.serializers;
+
+
+import com.google.common.hash.HashCode;
+import net.ripe.rpki.commons.crypto.crl.X509Crl;
+import net.ripe.rpki.ta.config.Config;
+import net.ripe.rpki.ta.domain.Revocation;
+import net.ripe.rpki.ta.serializers.legacy.SignedObjectTracker;
+import net.ripe.rpki.ta.serializers.legacy.SignedResourceCertificate;
+import org.joda.time.DateTime;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes the building blocks of the binary TA state encoding. A blob or string is preceded by its length as an int,
+ * -1 encodes null. A list is preceded by its size as an int.
+ */
+public class StateDataOutput extends DataOutputStream {
+
+    static final int NULL_LENGTH = -1;
+
+    public StateDataOutput(OutputStream out) {
+        super(out);
+    }
+
+    public void writeBlob(final byte[] blob) throws IOException {
+        if (blob == null) {
+            writeInt(NULL_LENGTH);
+        } else {
+            writeInt(blob.length);
+            write(blob);
+        }
+    }
+
+    public void writeString(final String s) throws IOException {
+        writeBlob(s == null ? null : s.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public void writeBigInteger(final BigInteger value) throws IOException {
+        writeBlob(value == null ? null : value.toByteArray());
+    }
+
+    public void writeNullableLong(final Long value) throws IOException {
+        writeBoolean(value != null);
+        if (value != null) {
+            writeLong(value);
+        }
+    }
+
+    public void writeDateTime(final DateTime dateTime) throws IOException {
+        writeNullableLong(dateTime == null ? null : dateTime.getMillis());
+    }
+
+    /**
+     * The configuration is small, it is embedded in the XML representation that ta.xml uses so it converts without
+     * loss.
+     */
+    public void writeConfig(final Config config) throws IOException {
+        writeString(config == null ? null : Serializers.config().serialize(config));
+    }
+
+    public void writeCrl(final X509Crl crl) throws IOException {
+        writeBlob(crl == null ? null : crl.getEncoded());
+    }
+
+    /**
+     * The serial and expiry, and the key identifier and SHA-256 of resource certificates, are stored with the DER, so
+     * reading the tracker does not need to parse or hash the object.
+     */
+    public void writeTracker(final SignedObjectTracker tracker) throws IOException {
+        writeString(tracker.getFileName());
+        writeBlob(tracker.getEncoded());
+        writeDateTime(tracker.getRevocationTime());
+        writeBigInteger(tracker.getCertificateSerial());
+        writeDateTime(tracker.getNotValidAfter());
+        if (tracker instanceof SignedResourceCertificate) {
+            writeString(((SignedResourceCertificate) tracker).getStoredKeyIdentifier());
+            writeBlob(((SignedResourceCertificate) tracker).getStoredSha256());
+        }
+    }
+
+    public void writeTrackers(final List<? extends SignedObjectTracker> trackers) throws IOException {
+        writeInt(trackers.size());
+        for (final SignedObjectTracker tracker : trackers) {
+            writeTracker(tracker);
+        }
+    }
+
+    public void writeRevocation(final Revocation revocation) throws IOException {
+        writeBigInteger(revocation.getSerial());
+        writeDateTime(revocation.getNotValidAfter());
+        writeDateTime(revocation.getRevocationTime());
+    }
+
+    public void writeRevocations(final List<Revocation> revocations) throws IOException {
+        writeInt(revocations.size());
+        for (final Revocation revocation : revocations) {
+            writeRevocation(revocation);
+        }
+    }
+
+    /**
+     * Hex SHA-256 hashes by URI, the hashes are stored as raw bytes.
+     */
+    public void writeHashes(final Map<String, String> hashes) throws IOException {
+        if (hashes == null) {
+            writeInt(NULL_LENGTH);
+            return;
+        }
+        writeInt(hashes.size());
+        for (final Map.Entry<String, String> hash : hashes.entrySet()) {
+            writeString(hash.getKey());
+            writeBlob(HashCode.fromString(hash.getValue()).asBytes());
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package net.ripe.rpki.ta.serializers;
+
+
+import net.ripe.rpki.ta.domain.TAState;
+import net.ripe.rpki.ta.util.ByteBufferInputStream;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * On-disk formats of the TA state. The format is selected per storage directory by the file that is present.
+ */
+public enum StateFormat {
+    XML("xml") {
+        @Override
+        public void encode(TAState state, OutputStream out) throws IOException {
+            // XStream is only used through the String based rpki-commons API
+            final Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+            writer.write(Serializers.taState().serialize(state));
+            writer.flush();
+        }
+
+        @Override
+        public TAState decode(ByteBuffer content) {
+            return Serializers.taState().deserialize(StandardCharsets.UTF_8.decode(content.duplicate()).toString());
+        }
+    },
+    BINARY("bin") {
+        @Override
+        public void encode(TAState state, OutputStream out) throws IOException {
+            new TAStateBinarySerializer().serialize(state, out);
+        }
+
+        @Override
+        public TAState decode(ByteBuffer content) throws IOException {
+            return new TAStateBinarySerializer().deserialize(new ByteBufferInputStream(content));
+        }
+    };
+
+    private final String fileExtension;
+
+    StateFormat(String fileExtension) {
+        this.fileExtension = fileExtension;
+    }
+
+    public String getFileExtension() {
+        return fileExtension;
+    }
+
+    /**
+     * Write the encoded state to the stream, which is flushed but not closed.
+     */
+    public abstract void encode(TAState state, OutputStream out) throws IOException;
+
+    public abstract TAState decode(ByteBuffer content) throws IOException;
+
+    public byte[] encode(TAState state) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        encode(state, bytes);
+        return bytes.toByteArray();
+    }
+
+    public TAState decode(byte[] content) throws IOException {
+        return decode(ByteBuffer.wrap(content));
+    }
+
+    public static StateFormat parse(String name) {
+        for (final StateFormat format : values()) {
+            if (format.name().equalsIgnoreCase(name)) {
+                return format;
+            }
+        }
+        throw new IllegalArgumentException("Unknown state format: " + name);
+    }
+}
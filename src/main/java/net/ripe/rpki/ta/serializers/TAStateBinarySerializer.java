@@ -0,0 +1,109 @@
+package net.ripe.rpki.ta.serializers;
+
+
+import net.ripe.rpki.ta.domain.TAState;
+import net.ripe.rpki.ta.domain.TAStateBuilder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Compact binary encoding of the TA state.
+ *
+ * All certificates, manifests and the CRL are stored as length-prefixed DER blobs and all counters as fixed-width
+ * integers, so no base64 or XML processing is needed. See {@link StateDataOutput} for the building blocks.
+ *
+ * Layout:
+ * <pre>
+ *   int    magic ("TA0S")
+ *   int    version
+ *   blob   encoded key store
+ *   string config (XML)
+ *   blob   crl
+ *   string key store passphrase, key store alias
+ *   blob   last issued certificate serial, last CRL serial, last manifest serial
+ *   long   last processed request timestamp
+ *   list   previous TA certificates, signed production certificates, signed manifests
+ *   list   revocations
+ *   map    published object hashes (URI string and SHA-256 blob)
+ * </pre>
+ */
+public class TAStateBinarySerializer {
+
+    static final int MAGIC = 0x54413053;
+    static final int VERSION = 1;
+
+    public byte[] serialize(final TAState state) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        serialize(state, bytes);
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Write the state to the given stream, which is flushed but not closed.
+     */
+    public void serialize(final TAState state, final OutputStream target) throws IOException {
+        final StateDataOutput out = new StateDataOutput(target);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+
+        out.writeBlob(state.getEncoded());
+        out.writeConfig(state.getConfig());
+        out.writeCrl(state.getCrl());
+
+        out.writeString(state.getKeyStorePassphrase());
+        out.writeString(state.getKeyStoreKeyAlias());
+
+        out.writeBigInteger(state.getLastIssuedCertificateSerial());
+        out.writeBigInteger(state.getLastCrlSerial());
+        out.writeBigInteger(state.getLastMftSerial());
+
+        out.writeNullableLong(state.getLastProcessedRequestTimestamp());
+
+        out.writeTrackers(state.getPreviousTaCertificates());
+        out.writeTrackers(state.getSignedProductionCertificates());
+        out.writeTrackers(state.getSignedManifests());
+        out.writeRevocations(state.getRevocations());
+        out.writeHashes(state.getPublishedObjectHashes());
+        out.flush();
+    }
+
+    public TAState deserialize(final byte[] content) throws IOException {
+        return deserialize(new ByteArrayInputStream(content));
+    }
+
+    public TAState deserialize(final InputStream content) throws IOException {
+        final DataInputStream header = new DataInputStream(content);
+        if (header.readInt() != MAGIC) {
+            throw new IOException("Not a binary trust anchor state");
+        }
+        final int version = header.readInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported binary trust anchor state version " + version);
+        }
+        try (final StateDataInput in = new StateDataInput(content)) {
+            final byte[] encoded = in.readBlob();
+            final TAState state = new TAStateBuilder(in.readConfig())
+                    .withEncoded(encoded)
+                    .withCrl(in.readCrl())
+                    .withKeyStorePassphrase(in.readString())
+                    .withKeyStoreKeyAlias(in.readString())
+                    .withLastIssuedCertificateSerial(in.readBigInteger())
+                    .withLastCrlSerial(in.readBigInteger())
+                    .withLastMftSerial(in.readBigInteger())
+                    .build();
+            state.setLastProcessedRequestTimestamp(in.readNullableLong());
+
+            in.readResourceCertificates(state.getPreviousTaCertificates());
+            in.readResourceCertificates(state.getSignedProductionCertificates());
+            in.readManifests(state.getSignedManifests());
+            in.readRevocations(state.getRevocations());
+            state.setPublishedObjectHashes(in.readHashes());
+            return state;
+        }
+    }
+}
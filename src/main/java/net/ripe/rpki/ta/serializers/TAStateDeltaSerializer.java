@@ -0,0 +1,141 @@
+package net.ripe.rpki.ta.serializers;
+
+
+import net.ripe.rpki.ta.domain.TAStateDelta;
+import net.ripe.rpki.ta.serializers.legacy.SignedObjectTracker;
+import org.joda.time.DateTime;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Binary encoding of a {@link TAStateDelta}, using the same building blocks as {@link TAStateBinarySerializer}.
+ * Unchanged scalars are written as null.
+ *
+ * Layout:
+ * <pre>
+ *   int    magic ("TA0D")
+ *   int    version
+ *   blob   encoded key store
+ *   string config (XML)
+ *   blob   crl
+ *   string key store passphrase, key store alias
+ *   blob   last issued certificate serial, last CRL serial, last manifest serial
+ *   long   last processed request timestamp
+ *   3x     tracker changes (removed serials, revoked serials with time, added trackers) for
+ *          previous TA certificates, signed production certificates and signed manifests
+ *   list   removed revocation serials
+ *   list   added revocations
+ *   map    published object hashes
+ * </pre>
+ */
+public class TAStateDeltaSerializer {
+
+    static final int MAGIC = 0x54413044;
+    static final int VERSION = 1;
+
+    public byte[] serialize(final TAStateDelta delta) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (final StateDataOutput out = new StateDataOutput(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+
+            out.writeBlob(delta.getEncoded());
+            out.writeConfig(delta.getConfig());
+            out.writeCrl(delta.getCrl());
+
+            out.writeString(delta.getKeyStorePassphrase());
+            out.writeString(delta.getKeyStoreKeyAlias());
+
+            out.writeBigInteger(delta.getLastIssuedCertificateSerial());
+            out.writeBigInteger(delta.getLastCrlSerial());
+            out.writeBigInteger(delta.getLastMftSerial());
+
+            out.writeNullableLong(delta.getLastProcessedRequestTimestamp());
+
+            writeTrackerChanges(out, delta.getPreviousTaCertificates());
+            writeTrackerChanges(out, delta.getSignedProductionCertificates());
+            writeTrackerChanges(out, delta.getSignedManifests());
+
+            writeSerials(out, delta.getRemovedRevocations());
+            out.writeRevocations(delta.getAddedRevocations());
+            out.writeHashes(delta.getPublishedObjectHashes());
+        }
+        return bytes.toByteArray();
+    }
+
+    public TAStateDelta deserialize(final byte[] content) throws IOException {
+        final ByteBuffer header = ByteBuffer.wrap(content);
+        if (content.length < 2 * Integer.BYTES || header.getInt() != MAGIC) {
+            throw new IOException("Not a trust anchor state delta");
+        }
+        final int version = header.getInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported trust anchor state delta version " + version);
+        }
+        try (final StateDataInput in = new StateDataInput(new ByteArrayInputStream(content, header.position(), header.remaining()))) {
+            final TAStateDelta delta = new TAStateDelta();
+            delta.setEncoded(in.readBlob());
+            delta.setConfig(in.readConfig());
+            delta.setCrl(in.readCrl());
+
+            delta.setKeyStorePassphrase(in.readString());
+            delta.setKeyStoreKeyAlias(in.readString());
+
+            delta.setLastIssuedCertificateSerial(in.readBigInteger());
+            delta.setLastCrlSerial(in.readBigInteger());
+            delta.setLastMftSerial(in.readBigInteger());
+
+            delta.setLastProcessedRequestTimestamp(in.readNullableLong());
+
+            readTrackerChangesHeader(in, delta.getPreviousTaCertificates());
+            in.readResourceCertificates(delta.getPreviousTaCertificates().getAdded());
+            readTrackerChangesHeader(in, delta.getSignedProductionCertificates());
+            in.readResourceCertificates(delta.getSignedProductionCertificates().getAdded());
+            readTrackerChangesHeader(in, delta.getSignedManifests());
+            in.readManifests(delta.getSignedManifests().getAdded());
+
+            readSerials(in, delta.getRemovedRevocations());
+            in.readRevocations(delta.getAddedRevocations());
+            delta.setPublishedObjectHashes(in.readHashes());
+            return delta;
+        }
+    }
+
+    private static void writeTrackerChanges(StateDataOutput out, TAStateDelta.TrackerChanges<? extends SignedObjectTracker> changes) throws IOException {
+        writeSerials(out, changes.getRemoved());
+        out.writeInt(changes.getRevoked().size());
+        for (final Map.Entry<BigInteger, DateTime> revoked : changes.getRevoked().entrySet()) {
+            out.writeBigInteger(revoked.getKey());
+            out.writeDateTime(revoked.getValue());
+        }
+        out.writeTrackers(changes.getAdded());
+    }
+
+    private static void readTrackerChangesHeader(StateDataInput in, TAStateDelta.TrackerChanges<? extends SignedObjectTracker> changes) throws IOException {
+        readSerials(in, changes.getRemoved());
+        final int revoked = in.readInt();
+        for (int i = 0; i < revoked; i++) {
+            changes.getRevoked().put(in.readBigInteger(), in.readDateTime());
+        }
+    }
+
+    private static void writeSerials(StateDataOutput out, List<BigInteger> serials) throws IOException {
+        out.writeInt(serials.size());
+        for (final BigInteger serial : serials) {
+            out.writeBigInteger(serial);
+        }
+    }
+
+    private static void readSerials(StateDataInput in, List<BigInteger> target) throws IOException {
+        final int size = in.readInt();
+        for (int i = 0; i < size; i++) {
+            target.add(in.readBigInteger());
+        }
+    }
+}
@@ -10,6 +10,7 @@ import net.ripe.rpki.ta.domain.TAState;
 import net.ripe.rpki.ta.serializers.legacy.SignedObjectTracker;
 
 import javax.security.auth.x500.X500Principal;
+import java.util.TreeMap;
 
 public class TAStateSerializer extends Serializer<TAState> {
 
@@ -18,10 +19,13 @@ public class TAStateSerializer extends Serializer<TAState> {
         return builder
                 .withAliasType("TA", TAState.class)
                 .withAliasType("revocation", Revocation.class)
+                .withAllowedType(Revocation.class)
                 .withAllowedType(Config.class)
                 .withAllowedType(X500Principal.class)
                 .withAllowedType(X509Crl.class)
-                .withAllowedTypeHierarchy(SignedObjectTracker.class);
+                .withAllowedType(TreeMap.class)
+                .withAllowedTypeHierarchy(SignedObjectTracker.class)
+                .withConverter(new SignedObjectTrackerConverter());
     }
 
     @Override
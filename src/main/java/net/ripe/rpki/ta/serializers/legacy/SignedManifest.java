@@ -2,24 +2,57 @@ package net.ripe.rpki.ta.serializers.legacy;
 
 
 import net.ripe.rpki.commons.crypto.cms.manifest.ManifestCms;
+import net.ripe.rpki.commons.crypto.cms.manifest.ManifestCmsParser;
+import net.ripe.rpki.commons.validation.ValidationResult;
+import org.bouncycastle.asn1.cms.ContentInfo;
+import org.bouncycastle.asn1.cms.SignedData;
+import org.bouncycastle.asn1.x509.Certificate;
+import org.joda.time.DateTime;
 
 import java.math.BigInteger;
 
 // Do not move from `legacy` folder because qualified name is used in the XML files.
 public class SignedManifest extends SignedObjectTracker {
-    private static final long serialVersionUID = 1L;
+    private static final long serialVersionUID = 2L;
 
     public SignedManifest(ManifestCms manifestCms) {
-        super(manifestCms, manifestCms.getValidityPeriod().getNotValidAfter());
+        super(manifestCms, manifestCms.getCertificate().getSerialNumber(), manifestCms.getValidityPeriod().getNotValidAfter());
     }
 
-    public ManifestCms getManifest() {
-        return (ManifestCms) getCertificateRepositoryObject();
+    private SignedManifest(byte[] encoded, BigInteger serial, DateTime notValidAfter, DateTime revocationTime) {
+        super(null, encoded, serial, notValidAfter, revocationTime);
+    }
+
+    private SignedManifest(SignedManifest manifest, DateTime revocationTime) {
+        super(manifest, revocationTime);
+    }
+
+    /**
+     * Restore a stored manifest without parsing it. When the serial was not stored, the EE certificate serial is read
+     * from the CMS structure, which is much cheaper than parsing and validating the manifest.
+     */
+    public static SignedManifest fromEncoded(byte[] encoded, BigInteger serial, DateTime notValidAfter, DateTime revocationTime) {
+        return new SignedManifest(encoded, serial != null ? serial : eeCertificateSerial(encoded), notValidAfter, revocationTime);
+    }
+
+    private static BigInteger eeCertificateSerial(byte[] encoded) {
+        final SignedData signedData = SignedData.getInstance(ContentInfo.getInstance(encoded).getContent());
+        return Certificate.getInstance(signedData.getCertificates().getObjectAt(0)).getSerialNumber().getValue();
     }
 
     @Override
-    public BigInteger getCertificateSerial() {
-        ManifestCms manifest = (ManifestCms) getCertificateRepositoryObject();
-        return manifest.getCertificate().getSerialNumber();
+    protected ManifestCms decode(byte[] encoded) {
+        final ManifestCmsParser parser = new ManifestCmsParser();
+        parser.parse(ValidationResult.withLocation("manifest.mft"), encoded);
+        return parser.getManifestCms();
+    }
+
+    @Override
+    public SignedManifest revoked(DateTime revocationTime) {
+        return isRevoked() ? this : new SignedManifest(this, revocationTime);
+    }
+
+    public ManifestCms getManifest() {
+        return (ManifestCms) getCertificateRepositoryObject();
     }
 }
@@ -1,5 +1,6 @@
 package net.ripe.rpki.ta.serializers.legacy;
 
+import lombok.AccessLevel;
 import lombok.EqualsAndHashCode;
 import lombok.Getter;
 import lombok.ToString;
@@ -9,43 +10,108 @@ import org.apache.commons.lang3.Validate;
 import org.joda.time.DateTime;
 
 import java.io.Serializable;
+import java.lang.ref.SoftReference;
 import java.math.BigInteger;
 
-@ToString
+/**
+ * Tracks an object signed by the TA. The object is kept as DER together with the fields that are needed for
+ * revocation, CRLs and compaction, and is only decoded when {@link #getCertificateRepositoryObject()} is called. The
+ * decoded object is cached in a soft reference.
+ */
+@ToString(of = {"fileName", "certificateSerial", "notValidAfter", "revocationTime"})
 @Getter
-@EqualsAndHashCode
+@EqualsAndHashCode(of = {"fileName", "encoded", "notValidAfter", "revocationTime"})
 public abstract class SignedObjectTracker implements Serializable {
 
-    private static final long serialVersionUID = 1L;
+    private static final long serialVersionUID = 2L;
 
     private final String fileName;
-    private final CertificateRepositoryObject certificateRepositoryObject;
+    private final byte[] encoded;
+    private final BigInteger certificateSerial;
     private final DateTime notValidAfter;
     private DateTime revocationTime;
 
-    public SignedObjectTracker(CertificateRepositoryObject certificateRepositoryObject, DateTime notValidAfter) {
+    @Getter(AccessLevel.NONE)
+    private transient SoftReference<CertificateRepositoryObject> decoded;
+
+    protected SignedObjectTracker(CertificateRepositoryObject certificateRepositoryObject, BigInteger certificateSerial, DateTime notValidAfter) {
         Validate.notNull(certificateRepositoryObject, "certificateRepositoryObject is required");
         this.fileName = null;
-        this.certificateRepositoryObject = certificateRepositoryObject;
+        this.encoded = certificateRepositoryObject.getEncoded();
+        this.certificateSerial = certificateSerial;
         this.revocationTime = null;
         this.notValidAfter = notValidAfter;
+        this.decoded = new SoftReference<>(certificateRepositoryObject);
     }
 
-    public SignedObjectTracker(String fileName, CertificateRepositoryObject certificateRepositoryObject, DateTime notValidAfter) {
+    protected SignedObjectTracker(String fileName, CertificateRepositoryObject certificateRepositoryObject, BigInteger certificateSerial, DateTime notValidAfter) {
         Validate.notEmpty(fileName, "fileName is required");
         Validate.notNull(certificateRepositoryObject, "certificateRepositoryObject is required");
         this.fileName = fileName;
-        this.certificateRepositoryObject = certificateRepositoryObject;
+        this.encoded = certificateRepositoryObject.getEncoded();
+        this.certificateSerial = certificateSerial;
         this.revocationTime = null;
         this.notValidAfter = notValidAfter;
+        this.decoded = new SoftReference<>(certificateRepositoryObject);
+    }
+
+    /**
+     * Tracker for a stored object that is decoded on first use.
+     */
+    protected SignedObjectTracker(String fileName, byte[] encoded, BigInteger certificateSerial, DateTime notValidAfter, DateTime revocationTime) {
+        Validate.notNull(encoded, "encoded is required");
+        Validate.notNull(certificateSerial, "certificateSerial is required");
+        Validate.notNull(notValidAfter, "notValidAfter is required");
+        this.fileName = fileName;
+        this.encoded = encoded;
+        this.certificateSerial = certificateSerial;
+        this.revocationTime = revocationTime;
+        this.notValidAfter = notValidAfter;
     }
 
+    /**
+     * Copy of a tracker with the given revocation time, sharing the (immutable) object.
+     */
+    protected SignedObjectTracker(SignedObjectTracker tracker, DateTime revocationTime) {
+        this.fileName = tracker.fileName;
+        this.encoded = tracker.encoded;
+        this.certificateSerial = tracker.certificateSerial;
+        this.revocationTime = revocationTime;
+        this.notValidAfter = tracker.notValidAfter;
+        this.decoded = tracker.decoded;
+    }
+
+    public CertificateRepositoryObject getCertificateRepositoryObject() {
+        final SoftReference<CertificateRepositoryObject> reference = decoded;
+        CertificateRepositoryObject object = reference == null ? null : reference.get();
+        if (object == null) {
+            object = decode(encoded);
+            decoded = new SoftReference<>(object);
+        }
+        return object;
+    }
+
+    protected abstract CertificateRepositoryObject decode(byte[] encoded);
+
+    /**
+     * Revoke this tracker in place. Only use this on trackers that are not shared with another {@link
+     * net.ripe.rpki.ta.domain.TAState}, e.g. while loading the state, otherwise use {@link #revoked(DateTime)}.
+     */
     public void revoke() {
-        if (revocationTime == null) {
-            revocationTime = ValidityPeriods.now();
+        revoke(ValidityPeriods.now());
+    }
+
+    public void revoke(DateTime revocationTime) {
+        if (this.revocationTime == null) {
+            this.revocationTime = revocationTime;
         }
     }
 
+    /**
+     * @return this tracker when it is already revoked, a revoked copy otherwise.
+     */
+    public abstract SignedObjectTracker revoked(DateTime revocationTime);
+
     public boolean shouldAppearInCrl() {
         return (isRevoked() && !isExpired());
     }
@@ -54,13 +120,19 @@ public abstract class SignedObjectTracker implements Serializable {
         return !isExpired() && !isRevoked();
     }
 
-    private boolean isExpired() {
+    public boolean isExpired() {
         return ValidityPeriods.now().isAfter(notValidAfter);
     }
 
+    /**
+     * An expired and revoked object will never be published or appear on a CRL again. Expired objects that were never
+     * revoked are kept, because a revocation request may still refer to them.
+     */
+    public boolean isCompactable() {
+        return isExpired() && isRevoked();
+    }
+
     public boolean isRevoked() {
         return revocationTime != null;
     }
-
-    public abstract BigInteger getCertificateSerial();
 }
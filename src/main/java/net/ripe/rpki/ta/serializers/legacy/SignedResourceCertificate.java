@@ -1,27 +1,113 @@
 package net.ripe.rpki.ta.serializers.legacy;
 
 
+import com.google.common.base.Preconditions;
+import com.google.common.hash.Hashing;
 import lombok.EqualsAndHashCode;
+import net.ripe.rpki.commons.crypto.util.KeyPairUtil;
 import net.ripe.rpki.commons.crypto.x509cert.X509ResourceCertificate;
+import net.ripe.rpki.commons.crypto.x509cert.X509ResourceCertificateParser;
+import org.bouncycastle.asn1.x509.Certificate;
+import org.joda.time.DateTime;
 
 import java.math.BigInteger;
 
 // Do not move from `legacy` folder because qualified name is used in the XML files.
 @EqualsAndHashCode(callSuper = true)
 public class SignedResourceCertificate extends SignedObjectTracker {
-    private static final long serialVersionUID = 1L;
+    private static final long serialVersionUID = 2L;
+
+    /**
+     * Encoded key identifier of the public key, used to find the certificates to revoke for a key. Absent in states
+     * written by older versions, it is then computed on first use.
+     */
+    @EqualsAndHashCode.Exclude
+    private String keyIdentifier;
+
+    /**
+     * SHA-256 of the DER, as listed on the manifest. Absent in states written by older versions, it is then computed
+     * on first use.
+     */
+    @EqualsAndHashCode.Exclude
+    private byte[] sha256;
 
     public SignedResourceCertificate(String fileName, X509ResourceCertificate resourceCertificate) {
-        super(fileName, resourceCertificate, resourceCertificate.getValidityPeriod().getNotValidAfter());
+        super(fileName, resourceCertificate, resourceCertificate.getSerialNumber(), resourceCertificate.getValidityPeriod().getNotValidAfter());
+        this.keyIdentifier = KeyPairUtil.getEncodedKeyIdentifier(resourceCertificate.getPublicKey());
+        this.sha256 = Hashing.sha256().hashBytes(getEncoded()).asBytes();
     }
 
-    public X509ResourceCertificate getResourceCertificate() {
-        return (X509ResourceCertificate) getCertificateRepositoryObject();
+    private SignedResourceCertificate(String fileName, byte[] encoded, BigInteger serial, DateTime notValidAfter, DateTime revocationTime, String keyIdentifier, byte[] sha256) {
+        super(fileName, encoded, serial, notValidAfter, revocationTime);
+        this.keyIdentifier = keyIdentifier;
+        this.sha256 = sha256;
+    }
+
+    private SignedResourceCertificate(SignedResourceCertificate certificate, DateTime revocationTime) {
+        super(certificate, revocationTime);
+        this.keyIdentifier = certificate.keyIdentifier;
+        this.sha256 = certificate.sha256;
+    }
+
+    /**
+     * Restore a stored certificate without parsing it. When the serial was not stored, it is read from the DER
+     * structure, which is much cheaper than parsing the resource certificate.
+     */
+    public static SignedResourceCertificate fromEncoded(String fileName, byte[] encoded, BigInteger serial, DateTime notValidAfter, DateTime revocationTime, String keyIdentifier) {
+        return fromEncoded(fileName, encoded, serial, notValidAfter, revocationTime, keyIdentifier, null);
+    }
+
+    public static SignedResourceCertificate fromEncoded(String fileName, byte[] encoded, BigInteger serial, DateTime notValidAfter, DateTime revocationTime, String keyIdentifier, byte[] sha256) {
+        Preconditions.checkArgument(encoded.length > 0, "Certificate %s has no content", fileName);
+        return new SignedResourceCertificate(fileName, encoded,
+                serial != null ? serial : Certificate.getInstance(encoded).getSerialNumber().getValue(),
+                notValidAfter, revocationTime, keyIdentifier, sha256);
+    }
+
+    public String getKeyIdentifier() {
+        if (keyIdentifier == null) {
+            keyIdentifier = KeyPairUtil.getEncodedKeyIdentifier(getResourceCertificate().getPublicKey());
+        }
+        return keyIdentifier;
+    }
+
+    /**
+     * @return the key identifier when it is known without decoding the certificate, null otherwise.
+     */
+    public String getStoredKeyIdentifier() {
+        return keyIdentifier;
+    }
+
+    /**
+     * The SHA-256 of the DER, for the manifest. It is only computed once for a certificate, even across runs.
+     */
+    public byte[] getSha256() {
+        if (sha256 == null) {
+            sha256 = Hashing.sha256().hashBytes(getEncoded()).asBytes();
+        }
+        return sha256.clone();
+    }
+
+    /**
+     * @return the SHA-256 when it is known without hashing the DER, null otherwise.
+     */
+    public byte[] getStoredSha256() {
+        return sha256 == null ? null : sha256.clone();
+    }
+
+    @Override
+    protected X509ResourceCertificate decode(byte[] encoded) {
+        final X509ResourceCertificateParser parser = new X509ResourceCertificateParser();
+        parser.parse(getFileName() == null ? "certificate.cer" : getFileName(), encoded);
+        return parser.getCertificate();
     }
 
     @Override
-    public BigInteger getCertificateSerial() {
-        X509ResourceCertificate resourceCertificate = (X509ResourceCertificate) getCertificateRepositoryObject();
-        return resourceCertificate.getSerialNumber();
+    public SignedResourceCertificate revoked(DateTime revocationTime) {
+        return isRevoked() ? this : new SignedResourceCertificate(this, revocationTime);
+    }
+
+    public X509ResourceCertificate getResourceCertificate() {
+        return (X509ResourceCertificate) getCertificateRepositoryObject();
     }
 }
@@ -2,19 +2,99 @@ package net.ripe.rpki.ta.util;
 
 import lombok.AccessLevel;
 import lombok.NoArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.nio.file.attribute.PosixFilePermissions;
 import java.time.Instant;
 import java.time.format.DateTimeFormatter;
 import java.time.temporal.ChronoUnit;
+import java.util.concurrent.ThreadLocalRandom;
 
 @NoArgsConstructor(access = AccessLevel.PRIVATE)
+@Slf4j
 public class FileUtil {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    public interface TextContent {
+        void writeTo(Writer out) throws IOException;
+    }
+
+    /**
+     * Write UTF-8 text through a buffer into a temporary file next to the target, force it to disk and atomically
+     * rename it to the target. When writing fails the target is left as it was, a reader never sees a partial file.
+     */
+    public static void writeAtomically(final File target, final TextContent content) throws IOException {
+        final File tempFile = createTempFileFor(target);
+        try {
+            try (final FileChannel channel = FileChannel.open(tempFile.toPath(), StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                final Writer out = new BufferedWriter(new OutputStreamWriter(Channels.newOutputStream(channel), StandardCharsets.UTF_8), BUFFER_SIZE);
+                content.writeTo(out);
+                out.flush();
+                channel.force(true);
+            }
+            moveAtomically(tempFile, target);
+        } finally {
+            Files.deleteIfExists(tempFile.toPath());
+        }
+    }
+
+    /**
+     * Create an empty temporary file in the directory of the target, to be moved over it. Unlike
+     * {@link File#createTempFile}, which creates files that only the owner can read, it gets the permissions of the
+     * existing target, or the default permissions (following the umask) when there is none.
+     */
+    public static File createTempFileFor(final File target) throws IOException {
+        final Path directory = target.getAbsoluteFile().getParentFile().toPath();
+        while (true) {
+            final Path tempFile = directory.resolve("." + target.getName() + "." + Long.toUnsignedString(ThreadLocalRandom.current().nextLong()) + ".tmp");
+            try {
+                Files.createFile(tempFile);
+            } catch (FileAlreadyExistsException e) {
+                continue;
+            }
+            if (target.exists()) {
+                try {
+                    Files.setPosixFilePermissions(tempFile, Files.getPosixFilePermissions(target.toPath()));
+                } catch (UnsupportedOperationException e) {
+                    // not a POSIX file system, the default permissions apply
+                }
+            }
+            return tempFile.toFile();
+        }
+    }
+
+    /**
+     * Atomically move the source over the target and force the directory entry to disk, so the rename survives a
+     * crash.
+     */
+    public static void moveAtomically(final File source, final File target) throws IOException {
+        Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        syncDirectory(target.getAbsoluteFile().getParentFile());
+    }
+
+    public static void syncDirectory(final File directory) {
+        try (final FileChannel channel = FileChannel.open(directory.toPath(), StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // not all platforms allow opening a directory
+            log.debug("Could not sync directory '{}'", directory, e);
+        }
+    }
+
     /**
      * Generate backup filenames following this pattern:
      *   * if it does not exist, use [basename].[ISO date time]
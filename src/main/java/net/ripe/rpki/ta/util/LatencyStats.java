@@ -0,0 +1,74 @@
+package net.ripe.rpki.ta.util;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Count, total and maximum duration and a histogram of the durations of an operation. Safe to record into from
+ * several threads.
+ */
+public class LatencyStats {
+
+    /**
+     * Upper bounds (exclusive) of the histogram buckets in milliseconds, the last bucket has no upper bound.
+     */
+    static final long[] BUCKET_BOUNDS_MILLIS = {1, 2, 5, 10, 20, 50, 100, 200, 500, 1000};
+
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final AtomicLong maxNanos = new AtomicLong();
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_BOUNDS_MILLIS.length + 1);
+
+    public void record(long nanos) {
+        count.increment();
+        totalNanos.add(nanos);
+        maxNanos.accumulateAndGet(nanos, Math::max);
+        final long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+        int bucket = 0;
+        while (bucket < BUCKET_BOUNDS_MILLIS.length && millis >= BUCKET_BOUNDS_MILLIS[bucket]) {
+            bucket++;
+        }
+        buckets.incrementAndGet(bucket);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getTotalNanos() {
+        return totalNanos.sum();
+    }
+
+    public long getMaxNanos() {
+        return maxNanos.get();
+    }
+
+    long getBucket(int bucket) {
+        return buckets.get(bucket);
+    }
+
+    public String summary() {
+        final long n = getCount();
+        return String.format(Locale.ROOT, "%dx avg %.3f ms max %.3f ms",
+                n, n == 0 ? 0.0 : getTotalNanos() / (double) n / 1_000_000, getMaxNanos() / 1_000_000.0);
+    }
+
+    public String toJson() {
+        final StringBuilder json = new StringBuilder("{")
+                .append("\"count\": ").append(getCount())
+                .append(String.format(Locale.ROOT, ", \"totalMillis\": %.3f", getTotalNanos() / 1_000_000.0))
+                .append(String.format(Locale.ROOT, ", \"maxMillis\": %.3f", getMaxNanos() / 1_000_000.0))
+                .append(", \"histogramMillis\": {");
+        for (int bucket = 0; bucket <= BUCKET_BOUNDS_MILLIS.length; bucket++) {
+            if (bucket > 0) {
+                json.append(", ");
+            }
+            json.append('"').append(bucket < BUCKET_BOUNDS_MILLIS.length ? "<" + BUCKET_BOUNDS_MILLIS[bucket] : ">=" + BUCKET_BOUNDS_MILLIS[bucket - 1])
+                    .append("\": ").append(getBucket(bucket));
+        }
+        return json.append("}}").toString();
+    }
+}
@@ -0,0 +1,207 @@
+package net.ripe.rpki.ta.util;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time spent in the phases of a run (state load, request parsing, signing, saving, ...) with object counts and byte
+ * sizes. The report is summarized in a log line and written as JSON next to the state.
+ *
+ * A report is bound to the thread that executes the run, recording on a thread without a report does nothing. A
+ * phase that happens several times in a run (e.g. for every request of a batch) is accumulated.
+ */
+public class RunReport {
+
+    public static final String FILENAME = "ta-run.json";
+
+    private static final ThreadLocal<RunReport> CURRENT = new ThreadLocal<>();
+
+    private final String command;
+    private final DateTime startedAt = DateTime.now(DateTimeZone.UTC);
+    private final long start = System.nanoTime();
+    private final Map<String, Phase> phases = new LinkedHashMap<>();
+    private final Map<String, Long> counts = new LinkedHashMap<>();
+    private final Map<String, Long> bytes = new LinkedHashMap<>();
+    private final Map<String, LatencyStats> operations = new TreeMap<>();
+    private long totalNanos;
+    private int exitCode;
+
+    private static class Phase {
+        long nanos;
+        int times;
+    }
+
+    RunReport(String command) {
+        this.command = command;
+    }
+
+    /**
+     * Start a report for a run on the current thread, replacing a report that was not finished.
+     */
+    public static RunReport start(String command) {
+        final RunReport report = new RunReport(command);
+        CURRENT.set(report);
+        return report;
+    }
+
+    /**
+     * Finish the report of the current thread, null when none was started.
+     */
+    public static RunReport finish(int exitCode) {
+        final RunReport report = CURRENT.get();
+        CURRENT.remove();
+        if (report != null) {
+            report.totalNanos = System.nanoTime() - report.start;
+            report.exitCode = exitCode;
+        }
+        return report;
+    }
+
+    /**
+     * Record the time since {@code startNanos} (from {@link System#nanoTime()}) for the phase.
+     */
+    public static void phase(String name, long startNanos) {
+        final RunReport report = CURRENT.get();
+        if (report != null) {
+            final Phase phase = report.phases.computeIfAbsent(name, n -> new Phase());
+            phase.nanos += System.nanoTime() - startNanos;
+            phase.times++;
+        }
+    }
+
+    public static void count(String name, long count) {
+        final RunReport report = CURRENT.get();
+        if (report != null) {
+            report.counts.merge(name, count, Long::sum);
+        }
+    }
+
+    public static void bytes(String name, long bytes) {
+        final RunReport report = CURRENT.get();
+        if (report != null) {
+            report.bytes.merge(name, bytes, Long::sum);
+        }
+    }
+
+    /**
+     * Add the cryptographic operations (signatures, key pair generation) of the run, by operation name.
+     */
+    public void operations(Map<String, LatencyStats> recorded) {
+        operations.putAll(recorded);
+    }
+
+    public long getPhaseNanos(String name) {
+        final Phase phase = phases.get(name);
+        return phase == null ? 0 : phase.nanos;
+    }
+
+    public long getCount(String name) {
+        return counts.getOrDefault(name, 0L);
+    }
+
+    public long getBytes(String name) {
+        return bytes.getOrDefault(name, 0L);
+    }
+
+    public String summary() {
+        final StringBuilder summary = new StringBuilder("Run finished in ").append(millis(totalNanos)).append(" ms");
+        String separator = ": ";
+        for (final Map.Entry<String, Phase> phase : phases.entrySet()) {
+            summary.append(separator).append(phase.getKey()).append(' ').append(millis(phase.getValue().nanos)).append(" ms");
+            if (phase.getValue().times > 1) {
+                summary.append(" (").append(phase.getValue().times).append("x)");
+            }
+            separator = ", ";
+        }
+        separator = "; ";
+        for (final Map.Entry<String, Long> count : counts.entrySet()) {
+            summary.append(separator).append(count.getKey()).append('=').append(count.getValue());
+            separator = ", ";
+        }
+        separator = "; ";
+        for (final Map.Entry<String, Long> size : bytes.entrySet()) {
+            summary.append(separator).append(size.getKey()).append('=').append(size.getValue()).append(" bytes");
+            separator = ", ";
+        }
+        separator = "; ";
+        for (final Map.Entry<String, LatencyStats> operation : operations.entrySet()) {
+            summary.append(separator).append(operation.getKey()).append(' ').append(operation.getValue().summary());
+            separator = ", ";
+        }
+        return summary.toString();
+    }
+
+    public String toJson() {
+        final StringBuilder json = new StringBuilder("{\n");
+        json.append("  \"command\": ").append(quote(command)).append(",\n");
+        json.append("  \"startedAt\": ").append(quote(startedAt.toString())).append(",\n");
+        json.append("  \"exitCode\": ").append(exitCode).append(",\n");
+        json.append("  \"totalMillis\": ").append(millis(totalNanos)).append(",\n");
+        json.append("  \"phases\": {");
+        String separator = "\n";
+        for (final Map.Entry<String, Phase> phase : phases.entrySet()) {
+            json.append(separator).append("    ").append(quote(phase.getKey()))
+                    .append(": {\"millis\": ").append(millis(phase.getValue().nanos))
+                    .append(", \"times\": ").append(phase.getValue().times).append('}');
+            separator = ",\n";
+        }
+        json.append("\n  },\n");
+        json.append("  \"counts\": ").append(toJson(counts)).append(",\n");
+        json.append("  \"bytes\": ").append(toJson(bytes));
+        if (!operations.isEmpty()) {
+            json.append(",\n  \"operations\": {");
+            separator = "\n";
+            for (final Map.Entry<String, LatencyStats> operation : operations.entrySet()) {
+                json.append(separator).append("    ").append(quote(operation.getKey())).append(": ").append(operation.getValue().toJson());
+                separator = ",\n";
+            }
+            json.append("\n  }");
+        }
+        return json.append("\n}\n").toString();
+    }
+
+    /**
+     * Replace the report file atomically: the daemon reports concurrent commands to the same file, and a reader never
+     * sees a partial report.
+     */
+    public void write(File file) throws IOException {
+        final String json = toJson();
+        FileUtil.writeAtomically(file, out -> out.write(json));
+    }
+
+    private static String toJson(Map<String, Long> values) {
+        final StringBuilder json = new StringBuilder("{");
+        String separator = "\n";
+        for (final Map.Entry<String, Long> value : values.entrySet()) {
+            json.append(separator).append("    ").append(quote(value.getKey())).append(": ").append(value.getValue());
+            separator = ",\n";
+        }
+        return json.append("\n  }").toString();
+    }
+
+    private static String millis(long nanos) {
+        return String.format(Locale.ROOT, "%.3f", nanos / (double) TimeUnit.MILLISECONDS.toNanos(1));
+    }
+
+    private static String quote(String value) {
+        final StringBuilder quoted = new StringBuilder("\"");
+        for (final char c : value.toCharArray()) {
+            if (c == '"' || c == '\\') {
+                quoted.append('\\').append(c);
+            } else if (c < 0x20) {
+                quoted.append(String.format(Locale.ROOT, "\\u%04x", (int) c));
+            } else {
+                quoted.append(c);
+            }
+        }
+        return quoted.append('"').toString();
+    }
+}
@@ -1,6 +1,5 @@
 package net.ripe.rpki.ta.util;
 
-import com.google.common.annotations.VisibleForTesting;
 import lombok.extern.slf4j.Slf4j;
 import net.ripe.rpki.commons.crypto.ValidityPeriod;
 import net.ripe.rpki.ta.config.Config;
@@ -11,16 +10,14 @@ import org.joda.time.Period;
 @Slf4j(topic = "ValidityPeriods")
 public class ValidityPeriods {
 
-    // Since this program runs within a script, we can safely assume that all
-    // calls to "now" can be replaced with a value calculated only once.
-    private static DateTime globalNow = DateTime.now(DateTimeZone.UTC);
+    // All calls to "now" in a run use a value calculated only once, so the objects of a run have the same times.
+    // The daemon runs many commands in one process and sets it again for every command.
+    private static volatile DateTime globalNow = DateTime.now(DateTimeZone.UTC);
 
     public static DateTime now() {
         return globalNow;
     }
 
-    // This is for testing purposes only.
-    @VisibleForTesting
     public static void setGlobalNow(final DateTime dateTime) {
         ValidityPeriods.globalNow = dateTime.withZone(DateTimeZone.UTC);
     }
@@ -0,0 +1,154 @@
+package net.ripe.rpki.ta;
+
+import net.ripe.rpki.commons.crypto.crl.X509Crl;
+import net.ripe.rpki.commons.ta.domain.request.TrustAnchorRequest;
+import net.ripe.rpki.commons.ta.domain.response.TrustAnchorResponse;
+import net.ripe.rpki.commons.ta.serializers.TrustAnchorRequestSerializer;
+import net.ripe.rpki.commons.ta.serializers.TrustAnchorResponseSerializer;
+import net.ripe.rpki.ta.config.Config;
+import net.ripe.rpki.ta.config.Env;
+import net.ripe.rpki.ta.config.ProgramOptions;
+import net.ripe.rpki.ta.exception.BadOptionsException;
+import net.ripe.rpki.ta.util.ValidityPeriods;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeUtils;
+import org.joda.time.DateTimeZone;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class DaemonTest {
+    static {
+        System.setProperty("org.slf4j.simpleLogger.defaultLogLevel", "ERROR");
+    }
+
+    @Test
+    public void serves_commands_until_shutdown(@TempDir File storageDir) throws Exception {
+        final Config config = Env.local();
+        config.setPersistentStorageDir(storageDir.getAbsolutePath());
+        final TA ta = TA.initialise(config);
+        ta.persist();
+
+        final Daemon daemon = new Daemon(ta, config, new ProgramOptions("--env=local", "--daemon=0"));
+        final CompletableFuture<Void> serving = CompletableFuture.runAsync(() -> {
+            try {
+                daemon.serve();
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+
+        final File daemonFile = new File(storageDir, Daemon.FILENAME);
+        final String[] portAndToken = Files.readString(daemonFile.toPath()).trim().split(" ");
+        assertThat(Integer.parseInt(portAndToken[0])).isEqualTo(daemon.getPort());
+
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), daemon.getPort());
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+             PrintWriter out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8), true)) {
+            out.println("wrong-token");
+            assertThat(in.readLine()).isEqualTo("ERROR Invalid token");
+        }
+
+        final File tal = new File(storageDir, "ta.tal");
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), daemon.getPort());
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+             PrintWriter out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8), true)) {
+            out.println(portAndToken[1]);
+            out.println("--print-tal=" + tal.getAbsolutePath());
+            assertThat(in.readLine()).isEqualTo("OK");
+            assertThat(tal).exists();
+
+            out.println("--env=production --print-tal=" + tal.getAbsolutePath());
+            assertThat(in.readLine()).startsWith("ERROR");
+
+            out.println(Daemon.SHUTDOWN);
+            assertThat(in.readLine()).isEqualTo("OK");
+        }
+
+        serving.get(10, TimeUnit.SECONDS);
+        assertThat(daemonFile).doesNotExist();
+    }
+
+    @Test
+    public void every_command_uses_the_current_time(@TempDir File storageDir) throws Exception {
+        final Config config = Env.local();
+        config.setPersistentStorageDir(storageDir.getAbsolutePath());
+        final TA ta = TA.initialise(config);
+        ta.persist();
+        final Daemon daemon = new Daemon(ta, config, new ProgramOptions("--env=local", "--daemon=0"));
+
+        final String requestXml = Files.readString(new File(getClass().getResource("/ta-request.xml").getFile()).toPath());
+        final TrustAnchorRequest request = new TrustAnchorRequestSerializer().deserialize(requestXml);
+        final String timestamp = "<creationTimestamp>" + request.getCreationTimestamp() + "</creationTimestamp>";
+        final File first = new File(storageDir, "first.xml");
+        final File second = new File(storageDir, "second.xml");
+        Files.writeString(first.toPath(), requestXml);
+        Files.writeString(second.toPath(), requestXml.replace(timestamp,
+                "<creationTimestamp>" + (request.getCreationTimestamp() + 1000) + "</creationTimestamp>"));
+
+        final DateTime start = DateTime.now(DateTimeZone.UTC).withMillisOfSecond(0);
+        try {
+            DateTimeUtils.setCurrentMillisFixed(start.getMillis());
+            assertThat(daemon.execute("--request=" + first + " --response=" + storageDir + "/first.response.xml --force-new-ta-certificate")).isEqualTo("OK");
+            DateTimeUtils.setCurrentMillisFixed(start.plusHours(1).getMillis());
+            assertThat(daemon.execute("--request=" + second + " --response=" + storageDir + "/second.response.xml")).isEqualTo("OK");
+            // read-only commands, like a plan, check expiry against the current time as well
+            DateTimeUtils.setCurrentMillisFixed(start.plusHours(2).getMillis());
+            assertThat(daemon.execute("--print-tal=" + storageDir + "/ta.tal")).isEqualTo("OK");
+            assertThat(ValidityPeriods.now()).isEqualTo(start.plusHours(2));
+        } finally {
+            DateTimeUtils.setCurrentMillisSystem();
+            ValidityPeriods.setGlobalNow(DateTime.now(DateTimeZone.UTC));
+            daemon.shutdown();
+        }
+
+        assertThat(crlThisUpdate(new File(storageDir, "first.response.xml"))).isEqualTo(start);
+        assertThat(crlThisUpdate(new File(storageDir, "second.response.xml"))).isEqualTo(start.plusHours(1));
+    }
+
+    @Test
+    public void arguments_with_spaces_are_quoted(@TempDir File storageDir) throws Exception {
+        assertThat(Daemon.arguments("  --print-tal=\"/tmp/my dir/ta.tal\"   --plan='-' ")).containsExactly("--print-tal=/tmp/my dir/ta.tal", "--plan=-");
+        assertThat(Daemon.arguments("--print-tal=/tmp/my\\ dir/ta.tal")).containsExactly("--print-tal=/tmp/my dir/ta.tal");
+        assertThat(Daemon.arguments("--print-tal='say \"hi\"'")).containsExactly("--print-tal=say \"hi\"");
+        assertThatThrownBy(() -> Daemon.arguments("--print-tal=\"/tmp/ta.tal")).isInstanceOf(BadOptionsException.class);
+
+        final Config config = Env.local();
+        config.setPersistentStorageDir(storageDir.getAbsolutePath());
+        final TA ta = TA.initialise(config);
+        ta.persist();
+        final Daemon daemon = new Daemon(ta, config, new ProgramOptions("--env=local", "--daemon=0"));
+        try {
+            final File directory = new File(storageDir, "with space");
+            assertThat(directory.mkdir()).isTrue();
+            assertThat(daemon.execute(" --print-tal=\"" + directory + "/ta.tal\"")).isEqualTo("OK");
+            assertThat(new File(directory, "ta.tal")).exists();
+        } finally {
+            daemon.shutdown();
+        }
+    }
+
+    private static DateTime crlThisUpdate(File response) throws Exception {
+        final TrustAnchorResponse trustAnchorResponse = new TrustAnchorResponseSerializer().deserialize(Files.readString(response.toPath()));
+        return trustAnchorResponse.getPublishedObjects().values().stream()
+                .filter(object -> object instanceof X509Crl)
+                .map(object -> ((X509Crl) object).getThisUpdateTime())
+                .findFirst()
+                .orElseThrow()
+                .withZone(DateTimeZone.UTC);
+    }
+}
@@ -0,0 +1,56 @@
+package net.ripe.rpki.ta;
+
+import net.ripe.rpki.ta.config.Config;
+import net.ripe.rpki.ta.config.Env;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.security.KeyPair;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class EeKeyPoolTest {
+
+    @AfterEach
+    public void stopPool() {
+        EeKeyPool.stop();
+    }
+
+    @Test
+    public void takes_key_pairs_from_the_pool_and_replaces_them() {
+        final Config config = Env.local();
+        EeKeyPool.start(config, 2, true);
+        assertThat(EeKeyPool.available()).isEqualTo(2);
+
+        final KeyPair first = EeKeyPool.take(config);
+        final KeyPair second = EeKeyPool.take(config);
+        assertThat(first.getPublic()).isNotEqualTo(second.getPublic());
+        assertThat(EeKeyPool.available()).isEqualTo(2);
+    }
+
+    @Test
+    public void generates_key_pairs_inline_without_a_pool_for_the_providers() {
+        final Config config = Env.local();
+        EeKeyPool.start(config, 1, true);
+
+        final Config other = Env.local();
+        other.setKeystoreProvider("SunRsaSign");
+        assertThat(EeKeyPool.take(other)).isNotNull();
+        assertThat(EeKeyPool.available()).isEqualTo(1);
+
+        EeKeyPool.stop();
+        assertThat(EeKeyPool.take(config)).isNotNull();
+    }
+
+    @Test
+    public void does_not_replace_key_pairs_for_a_single_request() {
+        final Config config = Env.local();
+        EeKeyPool.start(config, 2, false);
+
+        assertThat(EeKeyPool.take(config)).isNotNull();
+        assertThat(EeKeyPool.available()).isEqualTo(1);
+
+        EeKeyPool.stop();
+        assertThat(EeKeyPool.available()).isZero();
+    }
+}
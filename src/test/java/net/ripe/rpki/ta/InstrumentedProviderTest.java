@@ -0,0 +1,58 @@
+package net.ripe.rpki.ta;
+
+import net.ripe.rpki.ta.util.LatencyStats;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Signature;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class InstrumentedProviderTest {
+
+    @AfterEach
+    public void disable() {
+        InstrumentedProvider.disable();
+        InstrumentedProvider.drain();
+    }
+
+    @Test
+    public void uses_the_provider_itself_when_disabled() {
+        assertThat(InstrumentedProvider.wrap("SunRsaSign")).isEqualTo("SunRsaSign");
+    }
+
+    @Test
+    public void counts_signatures_and_key_pair_generation() throws Exception {
+        InstrumentedProvider.enable();
+        final String provider = InstrumentedProvider.wrap("SunRsaSign");
+        assertThat(provider).isEqualTo(InstrumentedProvider.PREFIX + "SunRsaSign");
+        assertThat(InstrumentedProvider.wrap("does-not-exist")).isEqualTo("does-not-exist");
+
+        final KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA", provider);
+        generator.initialize(2048);
+        final KeyPair keyPair = generator.generateKeyPair();
+
+        final byte[] data = "data".getBytes(StandardCharsets.UTF_8);
+        final Signature signer = Signature.getInstance("SHA256withRSA", provider);
+        signer.initSign(keyPair.getPrivate());
+        signer.update(data);
+        final byte[] signature = signer.sign();
+        signer.initSign(keyPair.getPrivate());
+        signer.update(data);
+        signer.sign();
+
+        final Signature verifier = Signature.getInstance("SHA256withRSA", "SunRsaSign");
+        verifier.initVerify(keyPair.getPublic());
+        verifier.update(data);
+        assertThat(verifier.verify(signature)).isTrue();
+
+        final Map<String, LatencyStats> operations = InstrumentedProvider.drain();
+        assertThat(operations.get("Signature.SHA256withRSA@SunRsaSign").getCount()).isEqualTo(2);
+        assertThat(operations.get("KeyPairGenerator.RSA@SunRsaSign").getCount()).isEqualTo(1);
+        assertThat(InstrumentedProvider.drain()).isEmpty();
+    }
+}
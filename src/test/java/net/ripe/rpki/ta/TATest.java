@@ -4,13 +4,17 @@ import net.ripe.rpki.commons.crypto.CertificateRepositoryObject;
 import net.ripe.rpki.commons.crypto.x509cert.X509CertificateInformationAccessDescriptor;
 import net.ripe.rpki.commons.ta.domain.request.SigningRequest;
 import net.ripe.rpki.commons.ta.domain.request.TrustAnchorRequest;
+import net.ripe.rpki.commons.ta.domain.response.ErrorResponse;
 import net.ripe.rpki.commons.ta.domain.response.SigningResponse;
 import net.ripe.rpki.commons.ta.domain.response.TrustAnchorResponse;
 import net.ripe.rpki.commons.ta.serializers.TrustAnchorRequestSerializer;
 import net.ripe.rpki.commons.ta.serializers.TrustAnchorResponseSerializer;
+import net.ripe.rpki.ta.config.Config;
 import net.ripe.rpki.ta.config.Env;
 import net.ripe.rpki.ta.config.ProgramOptions;
 import net.ripe.rpki.ta.domain.TAState;
+import net.ripe.rpki.ta.exception.RequestProcessorException;
+import net.ripe.rpki.ta.publication.PublishedObjectsDelta;
 import net.ripe.rpki.ta.serializers.TAStateSerializer;
 import org.bouncycastle.asn1.ASN1ObjectIdentifier;
 import org.joda.time.Period;
@@ -27,10 +31,14 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.security.GeneralSecurityException;
 import java.util.Base64;
+import java.util.List;
 import java.util.Optional;
+import java.util.UUID;
+import java.util.stream.Collectors;
 
 import static net.ripe.rpki.commons.crypto.x509cert.X509CertificateInformationAccessDescriptor.*;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 public class TATest {
     static {
@@ -44,6 +52,21 @@ public class TATest {
         assertThat(ta.getState().getEncoded()).isNotNull();
     }
 
+    @Test
+    public void decoded_key_store_is_cached() throws Exception {
+        final TA ta = TA.initialise(Env.local());
+        final int keyLoads = KeyStore.getKeyLoads();
+
+        // encoding the key store when initialising already provides the decoded key pair and certificate
+        final var certificate = ta.getTaCertificate();
+        assertThat(ta.getTaCertificate()).isSameAs(certificate);
+        assertThat(KeyStore.getKeyLoads()).isEqualTo(keyLoads);
+
+        KeyStore.invalidate(ta.getState().getEncoded());
+        assertThat(ta.getTaCertificate()).isEqualTo(certificate);
+        assertThat(KeyStore.getKeyLoads()).isEqualTo(keyLoads + 1);
+    }
+
     @Test
     public void serialize_ta() throws Exception {
         final String HOME = System.getProperty("user.home");
@@ -177,7 +200,7 @@ public class TATest {
 
         @BeforeEach
         void prepare() throws Exception {
-            File request = new File(getClass().getResource("/ta-request.xml").getFile());
+            File request = requestFile();
             File response = File.createTempFile("ta-0", "response.xml");
             response.deleteOnExit();
 
@@ -229,6 +252,221 @@ public class TATest {
         }
     }
 
+    @Test
+    void parallel_signing_gives_the_same_result_as_sequential_signing(@TempDir Path storageDir) throws Exception {
+        final Config config = Env.local();
+        config.setPersistentStorageDir(storageDir.toString());
+        TA.initialise(config).persist();
+
+        // sign for the same key three times, every certificate revokes the previous one
+        final File request = storageDir.resolve("request.xml").toFile();
+        Files.writeString(request.toPath(), requestWithSigningRequests(3));
+
+        final TA sequential = TA.load(config);
+        final File sequentialResponse = storageDir.resolve("sequential-response.xml").toFile();
+        sequential.processRequestXml(new ProgramOptions(
+                "--force-new-ta-certificate",
+                "--request", request.getCanonicalPath(),
+                "--response", sequentialResponse.getCanonicalPath()));
+
+        final TA parallel = TA.load(config);
+        final File parallelResponse = storageDir.resolve("parallel-response.xml").toFile();
+        parallel.processRequestXml(new ProgramOptions(
+                "--force-new-ta-certificate",
+                "--signing-threads", "3",
+                "--request", request.getCanonicalPath(),
+                "--response", parallelResponse.getCanonicalPath()));
+
+        assertThat(parallel.getState().getSignedProductionCertificates())
+                .hasSize(3)
+                .isEqualTo(sequential.getState().getSignedProductionCertificates());
+        assertThat(parallel.getState().getSignedProductionCertificates()).filteredOn(c -> !c.isRevoked()).hasSize(1);
+        assertThat(signedCertificates(parallelResponse)).hasSize(3).isEqualTo(signedCertificates(sequentialResponse));
+    }
+
+    @Test
+    void request_batch_is_processed_in_order_of_creation(@TempDir Path storageDir) throws Exception {
+        final String requestXml = readFile(requestFile());
+        final Path requests = Files.createDirectory(storageDir.resolve("requests"));
+        final Path responses = Files.createDirectory(storageDir.resolve("responses"));
+        // the file names are in the opposite order of the creation timestamps
+        Files.writeString(requests.resolve("a.xml"), withCreationTimestamp(requestXml, 1000));
+        Files.writeString(requests.resolve("b.xml"), requestXml);
+
+        final TA ta = TA.initialise(Env.local());
+        ta.processRequestBatch(new ProgramOptions(
+                "--force-new-ta-certificate",
+                "--request-batch", requests.toString(),
+                "--response-directory", responses.toString()));
+
+        assertThat(signedCertificates(responses.resolve("a.xml").toFile())).hasSize(1);
+        assertThat(signedCertificates(responses.resolve("b.xml").toFile())).hasSize(1);
+        // the certificate for b.xml is revoked by the one for a.xml, which was created later
+        final var certificates = ta.getState().getSignedProductionCertificates();
+        assertThat(certificates).hasSize(2);
+        assertThat(certificates.get(0).isRevoked()).isTrue();
+        assertThat(certificates.get(1).getResourceCertificate().getEncoded()).isEqualTo(
+                new TrustAnchorResponseSerializer().deserialize(readFile(responses.resolve("a.xml").toFile())).getTaResponses().stream()
+                        .filter(SigningResponse.class::isInstance)
+                        .map(r -> ((SigningResponse) r).getCertificate().getEncoded())
+                        .findFirst().orElseThrow());
+    }
+
+    @Test
+    void delta_response_contains_the_changes_since_the_previous_request(@TempDir Path storageDir) throws Exception {
+        final String requestXml = readFile(requestFile());
+        final Path requests = Files.createDirectory(storageDir.resolve("requests"));
+        final Path responses = Files.createDirectory(storageDir.resolve("responses"));
+        Files.writeString(requests.resolve("a.xml"), requestXml);
+        Files.writeString(requests.resolve("b.xml"), withCreationTimestamp(requestXml, 1000));
+
+        final TA ta = TA.initialise(Env.local());
+        ta.processRequestBatch(new ProgramOptions(
+                "--force-new-ta-certificate",
+                "--delta-response",
+                "--request-batch", requests.toString(),
+                "--response-directory", responses.toString()));
+
+        final String first = readFile(responses.resolve("a.delta.xml").toFile());
+        assertThat(first).contains("added=\"3\"", "updated=\"1\"", "withdrawn=\"0\"");
+
+        // the certificate for the same key replaces the one of the first request, the TA certificate is re-issued
+        final String second = readFile(responses.resolve("b.delta.xml").toFile());
+        assertThat(second).contains("added=\"1\"", "updated=\"3\"", "unchanged=\"0\"", "withdrawn=\"1\"");
+        assertThat(ta.getState().getPublishedObjectHashes()).hasSize(4);
+
+        // the hashes of the last response are kept in the state, the key store is not decoded for them
+        KeyStore.invalidate(ta.getState().getEncoded());
+        final int keyLoads = KeyStore.getKeyLoads();
+        assertThat(ta.publishedObjectHashes()).hasSize(4);
+        assertThat(KeyStore.getKeyLoads()).isEqualTo(keyLoads);
+    }
+
+    @Test
+    void plan_rehearses_the_request_without_the_private_key() throws Exception {
+        final TrustAnchorRequest request = new TrustAnchorRequestSerializer().deserialize(readFile(requestFile()));
+        final TA ta = TA.initialise(Env.local());
+        final TAState initialState = ta.getState();
+        KeyStore.invalidate(initialState.getEncoded());
+        final int keyLoads = KeyStore.getKeyLoads();
+
+        final RequestPlan notForced = ta.planRequest(request, new ProgramOptions("--request", "request.xml", "--plan", "-"));
+        assertThat(notForced.isProcessable()).isFalse();
+        assertThat(notForced.getProblems()).allMatch(problem -> problem.contains(ProgramOptions.FORCE_NEW_TA_CERT_OPT));
+
+        final ProgramOptions options = new ProgramOptions("--request", "request.xml", "--plan", "-", "--force-new-ta-certificate");
+        final RequestPlan plan = ta.planRequest(request, options);
+        assertThat(plan.isProcessable()).isTrue();
+        assertThat(plan.getSteps()).anyMatch(step -> step.startsWith("Re-issue the TA certificate"));
+        assertThat(plan.getPublishedObjects().values()).containsExactlyInAnyOrder(
+                PublishedObjectsDelta.Status.UPDATED, PublishedObjectsDelta.Status.ADDED, PublishedObjectsDelta.Status.ADDED, PublishedObjectsDelta.Status.ADDED);
+        assertThat(KeyStore.getKeyLoads()).isEqualTo(keyLoads);
+        assertThat(ta.getState()).isSameAs(initialState);
+
+        // the plan has the objects that processing the request publishes
+        final TrustAnchorResponse response = ta.processRequest(request, options).getLeft();
+        assertThat(plan.getPublishedObjects()).containsOnlyKeys(response.getPublishedObjects().keySet());
+    }
+
+    @Test
+    void plan_has_the_steps_of_a_request_with_revocations(@TempDir Path storageDir) throws Exception {
+        final TA ta = TA.initialise(Env.local());
+        ta.processRequestXml(new ProgramOptions(
+                "--force-new-ta-certificate",
+                "--request", requestFile().getCanonicalPath(),
+                "--response", storageDir.resolve("response.xml").toString()));
+        final String keyIdentifier = ta.getState().getSignedProductionCertificates().get(0).getKeyIdentifier();
+
+        // revoke the certificate and a key without one, then sign for the same key twice
+        final TrustAnchorRequest next = new TrustAnchorRequestSerializer().deserialize(withCreationTimestamp(
+                requestWithSigningRequests(2, revocationRequest(keyIdentifier), revocationRequest("unknown")), 1000));
+
+        final ProgramOptions options = new ProgramOptions("--request", "request.xml", "--plan", "-", "--force-new-ta-certificate");
+        final RequestPlan plan = ta.planRequest(next, options);
+        assertThat(plan.isProcessable()).isTrue();
+        assertThat(plan.getSteps()).containsSubsequence(
+                "Revoke the certificate of resource class DEFAULT for key " + keyIdentifier,
+                "Respond with an error to the revocation for key unknown: there is no certificate to revoke");
+        final List<String> signing = plan.getSteps().stream().filter(step -> step.startsWith("Sign ")).collect(Collectors.toList());
+        assertThat(signing).hasSize(2);
+        assertThat(signing.get(0)).doesNotContain("revoking");
+        assertThat(signing.get(1)).endsWith(", revoking the current certificate for key " + keyIdentifier);
+        // the certificate for the key is replaced, the TA certificate is re-issued
+        assertThat(plan.getPublishedObjects().values()).containsOnly(PublishedObjectsDelta.Status.UPDATED).hasSize(4);
+
+        // processing the request does what the plan says
+        final TrustAnchorResponse response = ta.processRequest(next, options).getLeft();
+        assertThat(response.getTaResponses()).hasSize(4);
+        assertThat(response.getTaResponses()).filteredOn(ErrorResponse.class::isInstance).hasSize(1);
+        assertThat(plan.getPublishedObjects()).containsOnlyKeys(response.getPublishedObjects().keySet());
+    }
+
+    private static String revocationRequest(String encodedPublicKey) {
+        return "<requests.RevocationRequest>"
+                + "<requestId>" + UUID.randomUUID() + "</requestId>"
+                + "<resourceClassName>DEFAULT</resourceClassName>"
+                + "<encodedPublicKey>" + encodedPublicKey + "</encodedPublicKey>"
+                + "</requests.RevocationRequest>";
+    }
+
+    @Test
+    void objects_are_published_after_the_state_is_persisted(@TempDir Path storageDir) throws Exception {
+        final Config config = Env.local();
+        config.setPersistentStorageDir(storageDir.toString());
+        TA.initialise(config).persist();
+        final Path repository = Files.createDirectory(storageDir.resolve("repository"));
+        final Path rrdp = Files.createDirectory(storageDir.resolve("rrdp"));
+        final ProgramOptions options = new ProgramOptions(
+                "--force-new-ta-certificate",
+                "--request", requestFile().getCanonicalPath(),
+                "--response", storageDir.resolve("response.xml").toString(),
+                "--publish-to", repository.toString(),
+                "--rrdp-directory", rrdp.toString());
+
+        final TA ta = TA.load(config);
+        ta.processRequestXml(options);
+        assertThat(repository.toFile().list()).isEmpty();
+        assertThat(rrdp.toFile().list()).isEmpty();
+
+        ta.persist();
+        ta.publish(options);
+        assertThat(repository.resolve("repository/RIPE-NCC-TA-TEST.crl")).exists();
+        assertThat(repository.resolve("repository/RIPE-NCC-TA-TEST.mft")).exists();
+        assertThat(repository.resolve("ta/RIPE-NCC-TA-TEST.cer")).exists();
+        assertThat(rrdp.resolve("notification.xml")).exists();
+    }
+
+    @Test
+    void request_batch_rejects_requests_with_the_same_creation_time(@TempDir Path storageDir) throws Exception {
+        final String requestXml = readFile(requestFile());
+        final Path requests = Files.createDirectory(storageDir.resolve("requests"));
+        final Path responses = Files.createDirectory(storageDir.resolve("responses"));
+        Files.writeString(requests.resolve("a.xml"), requestXml);
+        Files.writeString(requests.resolve("b.xml"), requestXml);
+
+        final TA ta = TA.initialise(Env.local());
+        final TAState initialState = ta.getState();
+        final TAState before = initialState.copy();
+        assertThatThrownBy(() -> ta.processRequestBatch(new ProgramOptions(
+                "--force-new-ta-certificate",
+                "--request-batch", requests.resolve("a.xml") + "," + requests.resolve("b.xml"),
+                "--response-directory", responses.toString())))
+                .isInstanceOf(RequestProcessorException.class);
+
+        // the first request was processed against a copy, the state is not changed by it
+        assertThat(ta.getState()).isSameAs(initialState);
+        assertThat(ta.getState()).isEqualTo(before);
+        assertThat(ta.getState().getLastIssuedCertificateSerial()).isEqualTo(before.getLastIssuedCertificateSerial());
+        assertThat(responses.toFile().list()).isEmpty();
+    }
+
+    private List<String> signedCertificates(File response) throws IOException {
+        return new TrustAnchorResponseSerializer().deserialize(readFile(response)).getTaResponses().stream()
+                .filter(SigningResponse.class::isInstance)
+                .map(r -> Base64.getEncoder().encodeToString(((SigningResponse) r).getCertificate().getEncoded()))
+                .collect(Collectors.toList());
+    }
+
     private Optional<String> siaLocationFor(ASN1ObjectIdentifier identifier, X509CertificateInformationAccessDescriptor[] descriptors) {
         for (X509CertificateInformationAccessDescriptor descriptor : descriptors) {
             if (identifier.equals(descriptor.getMethod())) {
@@ -238,6 +476,30 @@ public class TATest {
         return Optional.empty();
     }
 
+    private File requestFile() {
+        return new File(getClass().getResource("/ta-request.xml").getFile());
+    }
+
+    /**
+     * The request of {@link #requestFile()} with its signing request repeated, after the other given requests.
+     */
+    private String requestWithSigningRequests(int signingRequests, String... otherRequests) throws IOException {
+        final String requestXml = readFile(requestFile());
+        final String endTag = "</requests.SigningRequest>";
+        final int start = requestXml.indexOf("<requests.SigningRequest>");
+        final int end = requestXml.indexOf(endTag) + endTag.length();
+        return requestXml.substring(0, start) + String.join("", otherRequests) + requestXml.substring(start, end).repeat(signingRequests) + requestXml.substring(end);
+    }
+
+    /**
+     * The request with its creation timestamp moved by the given number of milliseconds.
+     */
+    private String withCreationTimestamp(String requestXml, long offset) {
+        final long creationTimestamp = new TrustAnchorRequestSerializer().deserialize(requestXml).getCreationTimestamp();
+        return requestXml.replace("<creationTimestamp>" + creationTimestamp + "</creationTimestamp>",
+                "<creationTimestamp>" + (creationTimestamp + offset) + "</creationTimestamp>");
+    }
+
     private String readFile(File f) throws IOException {
         return Files.readString(f.toPath());
     }
@@ -28,6 +28,8 @@ public class ProgramOptionsTest {
         assertInvalidCombinationsOfOptions("--request=./test.in --response=./test.out --generate-ta-certificate --env=dev", "Cannot have both --request and --generate-ta-certificate options.");
         assertInvalidCombinationsOfOptions("--request=./test.in --response=./test.out --initialise --env=dev", "Cannot have both --request and --initialise options.");
 
+        assertInvalidCombinationsOfOptions("--request-batch=./requests --response-directory=./responses --request=./test.in --response=./test.out --env=dev", "Cannot have both --request-batch and --request options.");
+
     }
 
     @Test
@@ -37,6 +39,11 @@ public class ProgramOptionsTest {
 
         assertInvalidCombinationsOfOptions("--env=dev --print-tal=./test.tal --force-new-ta-certificate", "Option --force-new-ta-certificate doesn't make sense without --request option.");
         assertInvalidCombinationsOfOptions("--env=dev --print-tal=./test.tal --revoke-non-requested-objects", "Option --revoke-non-requested-objects doesn't make sense without --request option.");
+        assertInvalidCombinationsOfOptions("--env=dev --request-batch=./requests", "Option --request-batch doesn't make sense without --response-directory option.");
+        assertInvalidCombinationsOfOptions("--env=dev --print-tal=./test.tal --delta-response", "Option --delta-response doesn't make sense without --request option.");
+        assertInvalidCombinationsOfOptions("--env=dev --request=./test.in --response=- --delta-response", "Option --delta-response needs a response file, it can not be used with --response=-.");
+        assertInvalidCombinationsOfOptions("--env=dev --print-tal=./test.tal --plan=-", "Option --plan doesn't make sense without --request option.");
+        assertInvalidCombinationsOfOptions("--env=dev --request=./test.in --response=./test.out --plan=-", "Cannot have both --plan and --response options.");
     }
 
     private void assertInvalidCombinationsOfOptions(final String args, final String message) {
@@ -0,0 +1,55 @@
+package net.ripe.rpki.ta.domain;
+
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import net.ripe.rpki.commons.crypto.util.KeyPairUtil;
+import net.ripe.rpki.ta.serializers.TAStateSerializer;
+import net.ripe.rpki.ta.serializers.legacy.SignedResourceCertificate;
+import net.ripe.rpki.ta.util.ValidityPeriods;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class KeyIdentifierIndexTest {
+    private static final String TA_STATE_PATH = "src/test/resources/ta.xml";
+
+    @Test
+    public void testRevokeLiveCertificatesForKey() throws Exception {
+        final TAStateSerializer serializer = new TAStateSerializer();
+        final TAState state = serializer.deserialize(Files.asCharSource(new File(TA_STATE_PATH), Charsets.UTF_8).read());
+        final List<SignedResourceCertificate> certificates = state.getSignedProductionCertificates();
+        final SignedResourceCertificate live = certificates.stream().filter(c -> !c.isRevoked()).findFirst().orElseThrow();
+        final String keyIdentifier = KeyPairUtil.getEncodedKeyIdentifier(live.getResourceCertificate().getPublicKey());
+        final int size = certificates.size();
+
+        final KeyIdentifierIndex index = new KeyIdentifierIndex(certificates);
+        assertThat(index.revoke("unknown", ValidityPeriods.now())).isFalse();
+        assertThat(index.revoke(keyIdentifier, ValidityPeriods.now())).isTrue();
+        assertThat(certificates).hasSize(size);
+        assertThat(certificates).noneMatch(c -> !c.isRevoked() && c.getKeyIdentifier().equals(keyIdentifier));
+        assertThat(index.revoke(keyIdentifier, ValidityPeriods.now())).isFalse();
+
+        // an added certificate can be revoked through the index
+        index.add(live);
+        assertThat(certificates).hasSize(size + 1);
+        assertThat(index.revoke(keyIdentifier, ValidityPeriods.now())).isTrue();
+        assertThat(certificates.get(size).isRevoked()).isTrue();
+    }
+
+    @Test
+    public void testKeyIdentifierIsStoredWithTheCertificate() throws Exception {
+        final TAStateSerializer serializer = new TAStateSerializer();
+        final TAState state = serializer.deserialize(Files.asCharSource(new File(TA_STATE_PATH), Charsets.UTF_8).read());
+        state.getSignedProductionCertificates().forEach(SignedResourceCertificate::getKeyIdentifier);
+
+        final TAState restored = serializer.deserialize(serializer.serialize(state));
+        assertThat(restored.getSignedProductionCertificates())
+                .allMatch(c -> c.getStoredKeyIdentifier() != null)
+                .allMatch(c -> c.getStoredKeyIdentifier().equals(
+                        KeyPairUtil.getEncodedKeyIdentifier(c.getResourceCertificate().getPublicKey())));
+    }
+}
@@ -0,0 +1,100 @@
+package net.ripe.rpki.ta.domain;
+
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import net.ripe.rpki.ta.serializers.TAStateSerializer;
+import net.ripe.rpki.ta.serializers.legacy.SignedManifest;
+import net.ripe.rpki.ta.serializers.legacy.SignedObjectTracker;
+import net.ripe.rpki.ta.serializers.legacy.SignedResourceCertificate;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class StateCompactorTest {
+    private static final String TA_STATE_PATH = "src/test/resources/ta.xml";
+
+    private TAState state;
+
+    @BeforeEach
+    public void loadState() throws IOException {
+        state = new TAStateSerializer().deserialize(Files.asCharSource(new File(TA_STATE_PATH), Charsets.UTF_8).read());
+    }
+
+    @Test
+    public void testCompactRemovesExpiredRevokedObjects() {
+        // All objects in the test state expired years ago.
+        final int revokedCertificates = (int) state.getSignedProductionCertificates().stream().filter(SignedObjectTracker::isRevoked).count();
+        final int revokedManifests = (int) state.getSignedManifests().stream().filter(SignedObjectTracker::isRevoked).count();
+        final int certificatesBefore = state.getSignedProductionCertificates().size();
+        final int manifestsBefore = state.getSignedManifests().size();
+
+        assertThat(StateCompactor.countCompactable(state)).isEqualTo(revokedCertificates + revokedManifests);
+
+        final StateCompactor.Result result = StateCompactor.compact(state);
+
+        assertThat(result.getEntries()).isEqualTo(revokedCertificates + revokedManifests);
+        assertThat(result.getBytes()).isPositive();
+        assertThat(state.getSignedProductionCertificates()).hasSize(certificatesBefore - revokedCertificates)
+                .noneMatch(SignedObjectTracker::isRevoked);
+        assertThat(state.getSignedManifests()).hasSize(manifestsBefore - revokedManifests)
+                .noneMatch(SignedObjectTracker::isRevoked);
+        assertThat(StateCompactor.countCompactable(state)).isZero();
+    }
+
+    @Test
+    public void testReplaceRevokedManifests() {
+        final List<SignedManifest> revoked = state.getSignedManifests().stream().filter(SignedObjectTracker::isRevoked).collect(Collectors.toList());
+        assertThat(revoked).isNotEmpty();
+
+        assertThat(StateCompactor.replaceRevokedManifests(state)).isEqualTo(revoked.size());
+
+        assertThat(state.getSignedManifests()).noneMatch(SignedObjectTracker::isRevoked);
+        assertThat(state.getRevocations())
+                .extracting(Revocation::getSerial)
+                .containsExactlyElementsOf(revoked.stream().map(SignedManifest::getCertificateSerial).collect(Collectors.toList()));
+        assertThat(state.getRevocations())
+                .extracting(Revocation::getRevocationTime)
+                .containsExactlyElementsOf(revoked.stream().map(SignedManifest::getRevocationTime).collect(Collectors.toList()));
+
+        // The revocations expired as well
+        assertThat(StateCompactor.compact(state).getEntries()).isGreaterThanOrEqualTo(revoked.size());
+        assertThat(state.getRevocations()).isEmpty();
+    }
+
+    @Test
+    public void testCompactKeepsExpiredUnrevokedObjects() {
+        final List<SignedResourceCertificate> expiredUnrevoked = state.getSignedProductionCertificates().stream()
+                .filter(certificate -> certificate.isExpired() && !certificate.isRevoked())
+                .collect(Collectors.toList());
+        assertThat(expiredUnrevoked).isNotEmpty();
+
+        StateCompactor.compact(state);
+
+        assertThat(state.getSignedProductionCertificates()).containsAll(expiredUnrevoked);
+        assertThat(StateCompactor.compact(state).getEntries()).isZero();
+        assertThat(state.getSignedProductionCertificates()).containsAll(expiredUnrevoked);
+    }
+
+    @Test
+    public void testShouldCompactAtThreshold() {
+        StateCompactor.compact(state);
+        final SignedResourceCertificate expired = state.getSignedProductionCertificates().get(0);
+        assertThat(expired.isExpired()).isTrue();
+
+        for (int i = 1; i < StateCompactor.AUTOMATIC_COMPACTION_THRESHOLD; i++) {
+            state.getSignedProductionCertificates().add(expired.revoked(expired.getNotValidAfter()));
+        }
+        assertThat(StateCompactor.countCompactable(state)).isEqualTo(StateCompactor.AUTOMATIC_COMPACTION_THRESHOLD - 1);
+        assertThat(StateCompactor.shouldCompact(state)).isFalse();
+
+        state.getSignedProductionCertificates().add(expired.revoked(expired.getNotValidAfter()));
+        assertThat(StateCompactor.shouldCompact(state)).isTrue();
+    }
+}
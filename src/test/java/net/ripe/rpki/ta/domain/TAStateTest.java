@@ -0,0 +1,42 @@
+package net.ripe.rpki.ta.domain;
+
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import net.ripe.rpki.ta.serializers.TAStateSerializer;
+import net.ripe.rpki.ta.serializers.legacy.SignedResourceCertificate;
+import net.ripe.rpki.ta.util.ValidityPeriods;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.math.BigInteger;
+import java.net.URI;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TAStateTest {
+    private static final String TA_STATE_PATH = "src/test/resources/ta.xml";
+
+    @Test
+    public void testCopySharesTrackersAndLeavesOriginalUntouched() throws Exception {
+        final TAStateSerializer serializer = new TAStateSerializer();
+        final TAState state = serializer.deserialize(Files.asCharSource(new File(TA_STATE_PATH), Charsets.UTF_8).read());
+        final String before = serializer.serialize(state);
+
+        final TAState copy = state.copy();
+        assertThat(copy).isEqualTo(state);
+        assertThat(copy.getSignedProductionCertificates().get(0)).isSameAs(state.getSignedProductionCertificates().get(0));
+        assertThat(copy.getConfig()).isNotSameAs(state.getConfig());
+
+        final int index = copy.getSignedProductionCertificates().indexOf(
+                copy.getSignedProductionCertificates().stream().filter(c -> !c.isRevoked()).findFirst().orElseThrow());
+        final SignedResourceCertificate revoked = copy.getSignedProductionCertificates().get(index).revoked(ValidityPeriods.now());
+        copy.getSignedProductionCertificates().set(index, revoked);
+        copy.getConfig().setNotificationUri(URI.create("https://example.com/notification.xml"));
+        copy.setLastIssuedCertificateSerial(copy.getLastIssuedCertificateSerial().add(BigInteger.ONE));
+
+        assertThat(revoked.isRevoked()).isTrue();
+        assertThat(state.getSignedProductionCertificates().get(index).isRevoked()).isFalse();
+        assertThat(serializer.serialize(state)).isEqualTo(before);
+    }
+}
@@ -15,6 +15,7 @@ import net.ripe.rpki.ta.domain.TAState;
 import net.ripe.rpki.ta.serializers.legacy.SignedManifest;
 import net.ripe.rpki.ta.serializers.legacy.SignedObjectTracker;
 import net.ripe.rpki.ta.serializers.legacy.SignedResourceCertificate;
+import net.ripe.rpki.ta.util.RunReport;
 import net.ripe.rpki.ta.util.ValidityPeriods;
 import org.joda.time.*;
 import org.junit.jupiter.api.AfterEach;
@@ -105,7 +106,9 @@ public class MainIntegrationTest extends AbstractIntegrationTest {
         assertEquals(BigInteger.valueOf(2L), taState2.getLastMftSerial());
         assertEquals(BigInteger.valueOf(2L), taState2.getLastCrlSerial());
         assertEquals(2, taState2.getSignedProductionCertificates().size());
-        assertEquals(2, taState2.getSignedManifests().size());
+        // the revoked manifest is only kept as a revocation
+        assertEquals(1, taState2.getSignedManifests().size());
+        assertEquals(1, taState2.getRevocations().size());
         assertEquals(2, taState2.getCrl().getCrl().getRevokedCertificates().size());
 
         assertEquals(0,
@@ -122,11 +125,44 @@ public class MainIntegrationTest extends AbstractIntegrationTest {
         assertThat(taState3.getSignedProductionCertificates())
                 .filteredOn(crt -> !crt.isRevoked())
                 .hasSize(1);
-        assertEquals(3, taState3.getSignedManifests().size());
+        assertEquals(1, taState3.getSignedManifests().size());
+        assertEquals(2, taState3.getRevocations().size());
 
         assertEquals(4, taState3.getCrl().getCrl().getRevokedCertificates().size());
     }
 
+    @Test
+    public void test_process_request_writes_run_report(@TempDir File dir) throws Exception {
+        assertThat(run("--initialise --env=test").exitCode).isZero();
+        final File report = new File(EnvStub._testConfig.getPersistentStorageDir(), RunReport.FILENAME);
+        assertThat(readFile(report.getPath())).contains("\"initialise\"", "\"state-save\"");
+
+        final File response = new File(dir, "response.xml");
+        assertThat(run("--request=./src/test/resources/ta-request.xml --force-new-ta-certificate " +
+                "--response=" + response.getAbsolutePath() + " --env=test").exitCode).isZero();
+
+        assertThat(readFile(report.getPath()))
+                .contains("\"exitCode\": 0")
+                .contains("\"state-load\"", "\"request-parse\"", "\"keystore-decode\"", "\"signing\"", "\"crl\"",
+                        "\"manifest-ee-key\"", "\"manifest-signing\"", "\"response-serialization\"", "\"backup\"")
+                .contains("\"signing-requests\": 1", "\"revocation-requests\": 0")
+                .contains("\"response\": " + response.length());
+    }
+
+    @Test
+    public void test_process_request_with_instrumented_providers(@TempDir File dir) throws Exception {
+        assertThat(run("--initialise --env=test").exitCode).isZero();
+
+        final File response = new File(dir, "response.xml");
+        assertThat(run("--request=./src/test/resources/ta-request.xml --force-new-ta-certificate --instrument-providers " +
+                "--response=" + response.getAbsolutePath() + " --env=test").exitCode).isZero();
+
+        assertThat(readFile(new File(EnvStub._testConfig.getPersistentStorageDir(), RunReport.FILENAME).getPath()))
+                .contains("\"Signature.SHA256withRSA@SunRsaSign\": {\"count\": ")
+                .contains("\"KeyPairGenerator.RSA@SunRsaSign\": {\"count\": 1,");
+        assertThat(reloadTaState().getConfig().getSignatureProvider()).isEqualTo("SunRsaSign");
+    }
+
     @Test
     public void test_process_request_revokes_manifest_ee_certificates() throws Exception {
         assertThat(run("--initialise --env=test").exitCode).isZero();
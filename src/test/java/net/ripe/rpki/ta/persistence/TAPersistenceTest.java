@@ -5,11 +5,14 @@ import net.ripe.rpki.ta.config.Config;
 import net.ripe.rpki.ta.config.Env;
 import net.ripe.rpki.ta.domain.TAState;
 import net.ripe.rpki.ta.domain.TAStateBuilder;
+import net.ripe.rpki.ta.serializers.StateFormat;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
 
 import java.io.File;
 import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -23,10 +26,105 @@ public class TAPersistenceTest {
         final TA ta = TA.initialise(testConfig);
         ta.persist();
 
-        assertThat(ta.getState()).isEqualTo(TA.load(testConfig).getState());
+        final TA loaded = TA.load(testConfig);
+        assertThat(loaded.getState()).isEqualTo(ta.getState());
+        assertThat(loaded.getPersisted().getIo().getBytes()).isEqualTo(new File(tempFolder, "ta.xml").length());
+        assertThat(loaded.getPersisted().getSnapshotSha256()).isEqualTo(ta.getPersisted().getSnapshotSha256());
 
         // TA serial should be set to 1 upon initialisation:
         assertThat(ta.getState().getLastIssuedCertificateSerial()).isOne();
     }
 
+    @Test
+    public void testUnchangedStateIsNotWritten(@TempDir File tempFolder) throws Exception {
+        final Config testConfig = Env.dev();
+        testConfig.setPersistentStorageDir(tempFolder.getAbsolutePath());
+
+        TA.initialise(testConfig).persist();
+        final File snapshot = new File(tempFolder, "ta.xml");
+        final long lastModified = snapshot.lastModified();
+
+        // neither a backup nor a new snapshot for a run that did not change the state
+        final TA ta = TA.load(testConfig);
+        ta.persist();
+        assertThat(tempFolder.list()).containsExactly("ta.xml");
+        assertThat(snapshot.lastModified()).isEqualTo(lastModified);
+
+        ta.getState().setLastCrlSerial(BigInteger.TEN);
+        ta.persist();
+        assertThat(tempFolder.list()).hasSize(2).contains("ta.xml");
+        assertThat(TA.load(testConfig).getState()).isEqualTo(ta.getState());
+    }
+
+    @Test
+    public void testConvertBetweenFormats(@TempDir File tempFolder) throws Exception {
+        final Config testConfig = Env.dev();
+        testConfig.setPersistentStorageDir(tempFolder.getAbsolutePath());
+
+        final TA ta = TA.initialise(testConfig);
+        ta.persist();
+        assertThat(new TAPersistence(testConfig).getFormat()).isEqualTo(StateFormat.XML);
+
+        ta.persist(StateFormat.BINARY);
+        assertThat(new File(tempFolder, "ta.bin")).exists();
+        assertThat(new File(tempFolder, "ta.xml")).doesNotExist();
+        assertThat(new TAPersistence(testConfig).getFormat()).isEqualTo(StateFormat.BINARY);
+        assertThat(TA.load(testConfig).getState()).isEqualTo(ta.getState());
+
+        TA.load(testConfig).persist(StateFormat.XML);
+        assertThat(new File(tempFolder, "ta.xml")).exists();
+        assertThat(new File(tempFolder, "ta.bin")).doesNotExist();
+        assertThat(TA.load(testConfig).getState()).isEqualTo(ta.getState());
+    }
+
+    @Test
+    public void testJournalReplay(@TempDir File tempFolder) throws Exception {
+        final Config testConfig = Env.dev();
+        testConfig.setPersistentStorageDir(tempFolder.getAbsolutePath());
+
+        TA.initialise(testConfig).persist(StateFormat.XML, true);
+        final File snapshot = new File(tempFolder, "ta.xml");
+        final byte[] snapshotContent = Files.readAllBytes(snapshot.toPath());
+
+        final TA ta = TA.load(testConfig);
+        ta.getState().setLastProcessedRequestTimestamp(1234L);
+        ta.getState().setLastCrlSerial(BigInteger.TEN);
+        ta.persist();
+
+        // the change went to the journal, the snapshot is untouched
+        assertThat(Files.readAllBytes(snapshot.toPath())).isEqualTo(snapshotContent);
+        assertThat(new File(tempFolder, StateJournal.FILENAME)).exists();
+        assertThat(TA.load(testConfig).getState()).isEqualTo(ta.getState());
+        assertThat(TA.load(testConfig).getPersisted().getJournalRecords()).isEqualTo(1);
+
+        // turning the journal off writes a snapshot with all changes
+        TA.load(testConfig).persist(null, false);
+        assertThat(new File(tempFolder, StateJournal.FILENAME)).doesNotExist();
+        assertThat(TA.load(testConfig).getState()).isEqualTo(ta.getState());
+    }
+
+    @Test
+    public void testTornJournalRecordIsIgnored(@TempDir File tempFolder) throws Exception {
+        final Config testConfig = Env.dev();
+        testConfig.setPersistentStorageDir(tempFolder.getAbsolutePath());
+
+        final TA ta = TA.initialise(testConfig);
+        ta.persist(StateFormat.BINARY, true);
+        ta.getState().setLastProcessedRequestTimestamp(1234L);
+        ta.persist();
+        final TAState persisted = TA.load(testConfig).getState();
+
+        // simulate a crash halfway through appending the next record
+        final File journal = new File(tempFolder, StateJournal.FILENAME);
+        Files.write(journal.toPath(), new byte[]{0, 0, 0, 100, 1, 2, 3}, StandardOpenOption.APPEND);
+
+        final TA loaded = TA.load(testConfig);
+        assertThat(loaded.getState()).isEqualTo(persisted);
+
+        // the torn record is overwritten by the next append
+        loaded.getState().setLastProcessedRequestTimestamp(5678L);
+        loaded.persist();
+        assertThat(TA.load(testConfig).getState()).isEqualTo(loaded.getState());
+        assertThat(TA.load(testConfig).getPersisted().getJournalRecords()).isEqualTo(2);
+    }
 }
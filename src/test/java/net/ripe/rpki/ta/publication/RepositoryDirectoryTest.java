@@ -0,0 +1,61 @@
+package net.ripe.rpki.ta.publication;
+
+import net.ripe.rpki.commons.crypto.x509cert.X509ResourceCertificate;
+import net.ripe.rpki.ta.TA;
+import net.ripe.rpki.ta.config.Env;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class RepositoryDirectoryTest {
+
+    private static final URI CERTIFICATE = URI.create("rsync://localhost:10873/ta/TA.cer");
+    private static final URI OBSOLETE = URI.create("rsync://localhost:10873/ta/OBSOLETE.cer");
+
+    @Test
+    public void testOnlyChangedObjectsAreWritten(@TempDir Path tempDir) throws Exception {
+        final X509ResourceCertificate certificate = TA.initialise(Env.local()).getTaCertificate();
+        final X509ResourceCertificate other = TA.initialise(Env.local()).getTaCertificate();
+        final RepositoryDirectory repository = new RepositoryDirectory(tempDir.toFile());
+
+        assertThat(repository.publish(Map.of(CERTIFICATE, certificate, OBSOLETE, other)))
+                .isEqualTo(new RepositoryDirectory.Result(2, 0, 0, certificate.getEncoded().length + other.getEncoded().length));
+        assertThat(Files.readAllBytes(tempDir.resolve("ta/TA.cer"))).isEqualTo(certificate.getEncoded());
+
+        // the unchanged certificate is not rewritten, the object that is no longer published is removed
+        assertThat(repository.publish(Map.of(CERTIFICATE, certificate)))
+                .isEqualTo(new RepositoryDirectory.Result(0, 1, 1, 0));
+        assertThat(tempDir.resolve("ta").toFile().list()).containsExactly("TA.cer");
+
+        assertThat(repository.publish(Map.of(CERTIFICATE, other)))
+                .isEqualTo(new RepositoryDirectory.Result(1, 0, 0, other.getEncoded().length));
+        assertThat(Files.readAllBytes(tempDir.resolve("ta/TA.cer"))).isEqualTo(other.getEncoded());
+    }
+
+    @Test
+    public void testManifestReplacesThePublishedOneLast() {
+        final List<Path> objects = Stream.of("ta/TA.mft", "ta/TA.crl", "ta/B.cer", "ta/A.cer")
+                .map(Path::of)
+                .sorted(RepositoryDirectory.RENAME_ORDER)
+                .collect(Collectors.toList());
+        assertThat(objects.subList(2, 4)).containsExactly(Path.of("ta/TA.crl"), Path.of("ta/TA.mft"));
+    }
+
+    @Test
+    public void testObjectsOutsideTheDirectoryAreRejected(@TempDir Path tempDir) {
+        final RepositoryDirectory repository = new RepositoryDirectory(tempDir.toFile());
+        assertThatThrownBy(() -> repository.path(URI.create("rsync://localhost:10873/ta/../../TA.cer")))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThat(repository.path(CERTIFICATE)).isEqualTo(tempDir.toAbsolutePath().normalize().resolve("ta/TA.cer"));
+    }
+}
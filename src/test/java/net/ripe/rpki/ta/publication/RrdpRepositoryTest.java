@@ -0,0 +1,65 @@
+package net.ripe.rpki.ta.publication;
+
+import net.ripe.rpki.commons.crypto.x509cert.X509ResourceCertificate;
+import net.ripe.rpki.ta.TA;
+import net.ripe.rpki.ta.config.Env;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RrdpRepositoryTest {
+
+    private static final URI NOTIFICATION = URI.create("https://localhost:7788/notification.xml");
+    private static final URI CERTIFICATE = URI.create("rsync://localhost:10873/ta/TA.cer");
+    private static final URI OTHER = URI.create("rsync://localhost:10873/ta/OTHER.cer");
+
+    @Test
+    public void testSnapshotsAndDeltas(@TempDir Path tempDir) throws Exception {
+        final X509ResourceCertificate certificate = TA.initialise(Env.local()).getTaCertificate();
+        final X509ResourceCertificate other = TA.initialise(Env.local()).getTaCertificate();
+        final RrdpRepository repository = new RrdpRepository(tempDir.toFile());
+
+        final RrdpRepository.Result first = repository.publish(NOTIFICATION, Map.of(CERTIFICATE, certificate));
+        final String session = first.getSessionId();
+        assertThat(first.getSerial()).isEqualTo(1);
+        assertThat(tempDir.resolve(session + "/1/snapshot.xml")).exists();
+        assertThat(tempDir.resolve(session + "/1/delta.xml")).doesNotExist();
+        assertThat(Files.readString(tempDir.resolve(RrdpRepository.NOTIFICATION_FILENAME)))
+                .contains("session_id=\"" + session + "\"", "serial=\"1\"",
+                        "uri=\"https://localhost:7788/" + session + "/1/snapshot.xml\"")
+                .doesNotContain("<delta");
+
+        // nothing changed, so no new serial
+        assertThat(repository.publish(NOTIFICATION, Map.of(CERTIFICATE, certificate)).getSerial()).isEqualTo(1);
+
+        final RrdpRepository.Result second = repository.publish(NOTIFICATION, Map.of(CERTIFICATE, other, OTHER, certificate));
+        assertThat(second.getSerial()).isEqualTo(2);
+        assertThat(second.getSessionId()).isEqualTo(session);
+        assertThat(Files.readString(tempDir.resolve(session + "/2/delta.xml")))
+                .contains("<publish uri=\"" + CERTIFICATE + "\" hash=\"" + PublishedObjectsDelta.sha256(certificate.getEncoded()) + "\">")
+                .contains("<publish uri=\"" + OTHER + "\">");
+
+        repository.publish(NOTIFICATION, Map.of(OTHER, certificate));
+        assertThat(Files.readString(tempDir.resolve(session + "/3/delta.xml")))
+                .contains("<withdraw uri=\"" + CERTIFICATE + "\" hash=\"" + PublishedObjectsDelta.sha256(other.getEncoded()) + "\"")
+                .doesNotContain("<publish");
+        // the deltas together would be larger than the snapshot with a single object
+        assertThat(Files.readString(tempDir.resolve(RrdpRepository.NOTIFICATION_FILENAME)))
+                .contains("serial=\"3\"", "<delta serial=\"3\"")
+                .doesNotContain("<delta serial=\"2\"");
+        assertThat(repository.readState().getObjects()).containsOnlyKeys(OTHER);
+
+        // without the state a new session starts, the files of the old one are removed
+        Files.delete(tempDir.resolve(RrdpRepository.STATE_FILENAME));
+        final RrdpRepository.Result restarted = repository.publish(NOTIFICATION, Map.of(OTHER, certificate));
+        assertThat(restarted.getSessionId()).isNotEqualTo(session);
+        assertThat(restarted.getSerial()).isEqualTo(1);
+        assertThat(tempDir.resolve(session)).doesNotExist();
+    }
+}
@@ -0,0 +1,44 @@
+package net.ripe.rpki.ta.serializers;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SerializersTest {
+
+    @Test
+    public void serializers_are_shared() {
+        assertThat(Serializers.taState()).isSameAs(Serializers.taState());
+        assertThat(Serializers.config()).isSameAs(Serializers.config());
+        assertThat(Serializers.trustAnchorRequest()).isSameAs(Serializers.trustAnchorRequest());
+        assertThat(Serializers.trustAnchorResponse()).isSameAs(Serializers.trustAnchorResponse());
+    }
+
+    @Test
+    public void shared_serializer_can_be_used_concurrently() throws Exception {
+        final String xml = new String(Files.readAllBytes(Paths.get("src/test/resources/ta.xml")), StandardCharsets.UTF_8);
+        final String expected = new TAStateSerializer().serialize(new TAStateSerializer().deserialize(xml));
+
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < 16; i++) {
+                results.add(executor.submit(() -> Serializers.taState().serialize(Serializers.taState().deserialize(xml))));
+            }
+            for (final Future<String> result : results) {
+                assertThat(result.get()).isEqualTo(expected);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
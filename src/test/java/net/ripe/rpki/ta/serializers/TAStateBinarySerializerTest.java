@@ -0,0 +1,78 @@
+package net.ripe.rpki.ta.serializers;
+
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.HashCode;
+import com.google.common.io.Files;
+import net.ripe.rpki.ta.domain.TAState;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class TAStateBinarySerializerTest {
+    private static final String TA_STATE_PATH = "src/test/resources/ta.xml";
+
+    private final TAStateSerializer xmlSerializer = new TAStateSerializer();
+    private final TAStateBinarySerializer binarySerializer = new TAStateBinarySerializer();
+
+    private TAState state;
+
+    @BeforeEach
+    public void loadState() throws IOException {
+        state = xmlSerializer.deserialize(Files.asCharSource(new File(TA_STATE_PATH), Charsets.UTF_8).read());
+    }
+
+    @Test
+    public void testRoundTripIsLossless() throws IOException {
+        final TAState restored = binarySerializer.deserialize(binarySerializer.serialize(state));
+
+        assertThat(restored.getSignedProductionCertificates()).hasSameSizeAs(state.getSignedProductionCertificates());
+        assertThat(restored.getSignedManifests()).hasSameSizeAs(state.getSignedManifests());
+        assertThat(xmlSerializer.serialize(restored)).isEqualTo(xmlSerializer.serialize(state));
+    }
+
+    @Test
+    public void testCertificateHashesAreKept() throws IOException {
+        final byte[] sha256 = state.getSignedProductionCertificates().get(0).getSha256();
+        assertThat(state.getSignedProductionCertificates().get(1).getStoredSha256()).isNull();
+
+        final TAState restored = binarySerializer.deserialize(binarySerializer.serialize(state));
+        assertThat(restored.getSignedProductionCertificates().get(0).getStoredSha256()).isEqualTo(sha256);
+        assertThat(restored.getSignedProductionCertificates().get(1).getStoredSha256()).isNull();
+        assertThat(xmlSerializer.deserialize(xmlSerializer.serialize(restored)).getSignedProductionCertificates().get(0).getStoredSha256())
+                .isEqualTo(sha256);
+    }
+
+    @Test
+    public void testPublishedObjectHashesAreKept() throws IOException {
+        assertThat(binarySerializer.deserialize(binarySerializer.serialize(state)).getPublishedObjectHashes()).isNull();
+
+        final Map<String, String> hashes = new TreeMap<>();
+        hashes.put("rsync://localhost:10873/ta/TA.cer", HashCode.fromBytes(state.getSignedProductionCertificates().get(0).getSha256()).toString());
+        state.setPublishedObjectHashes(hashes);
+
+        final TAState restored = binarySerializer.deserialize(binarySerializer.serialize(state));
+        assertThat(restored.getPublishedObjectHashes()).isEqualTo(hashes);
+        assertThat(xmlSerializer.deserialize(xmlSerializer.serialize(restored)).getPublishedObjectHashes()).isEqualTo(hashes);
+    }
+
+    @Test
+    public void testBinaryIsSmallerThanXml() throws IOException {
+        assertThat(binarySerializer.serialize(state).length)
+                .isLessThan(StateFormat.XML.encode(state).length);
+    }
+
+    @Test
+    public void testRejectsXml() {
+        assertThatThrownBy(() -> binarySerializer.deserialize(StateFormat.XML.encode(state)))
+                .isInstanceOf(IOException.class)
+                .hasMessage("Not a binary trust anchor state");
+    }
+}
@@ -170,6 +170,27 @@ public class TrustAnchorStateSerializerTest {
 
     }
 
+    /**
+     * Trackers are restored without parsing their objects, the serial and expiry must match the parsed object.
+     */
+    @Test
+    public void testShouldRestoreTrackersWithoutParsing() {
+        for (final SignedResourceCertificate certificate : state.getSignedProductionCertificates()) {
+            assertEquals(certificate.getResourceCertificate().getSerialNumber(), certificate.getCertificateSerial());
+            assertEquals(certificate.getResourceCertificate().getValidityPeriod().getNotValidAfter().getMillis(),
+                         certificate.getNotValidAfter().getMillis());
+        }
+        for (final SignedManifest manifest : state.getSignedManifests()) {
+            assertEquals(manifest.getManifest().getCertificate().getSerialNumber(), manifest.getCertificateSerial());
+        }
+
+        // the serial is stored on the next save
+        final TAStateSerializer serializer = new TAStateSerializer();
+        final String xml = serializer.serialize(state);
+        assertThat(xml).contains("<certificateSerial>" + state.getSignedManifests().get(0).getCertificateSerial() + "</certificateSerial>");
+        assertThat(serializer.deserialize(xml)).isEqualTo(state);
+    }
+
     private String cleanupBase64(String s) {
         return s.replaceAll("\\s*", "");
     }
@@ -4,11 +4,15 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
 
 import java.io.IOException;
+import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
 import java.time.Instant;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
 
 public class FileUtilTest {
     @Test
@@ -39,4 +43,32 @@ public class FileUtilTest {
         // Afterwards, counter increments
         assertThat(FileUtil.findAvailableBackupFile(baseName, now)).hasFileName("important.txt.2007-12-03T10:15:30Z-2");
     }
+
+    @Test
+    public void testWriteAtomically(@TempDir Path tempDir) throws IOException {
+        final Path target = tempDir.resolve("response.xml");
+        FileUtil.writeAtomically(target.toFile(), out -> out.write("<response/>"));
+        assertThat(target).hasContent("<response/>");
+
+        // A failed write leaves the previous content and no temporary file
+        assertThatThrownBy(() -> FileUtil.writeAtomically(target.toFile(), out -> {
+            out.write("<partial");
+            throw new IOException("failed");
+        })).isInstanceOf(IOException.class);
+        assertThat(target).hasContent("<response/>");
+        assertThat(Files.list(tempDir)).containsExactly(target);
+    }
+
+    @Test
+    public void testWriteAtomicallyKeepsThePermissionsOfTheTarget(@TempDir Path tempDir) throws IOException {
+        assumeTrue(FileSystems.getDefault().supportedFileAttributeViews().contains("posix"));
+        final Path target = tempDir.resolve("response.xml");
+        Files.writeString(target, "<previous/>");
+        Files.setPosixFilePermissions(target, PosixFilePermissions.fromString("rw-r--r--"));
+
+        FileUtil.writeAtomically(target.toFile(), out -> out.write("<response/>"));
+
+        assertThat(target).hasContent("<response/>");
+        assertThat(PosixFilePermissions.toString(Files.getPosixFilePermissions(target))).isEqualTo("rw-r--r--");
+    }
 }
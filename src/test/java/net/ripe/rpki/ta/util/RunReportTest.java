@@ -0,0 +1,75 @@
+package net.ripe.rpki.ta.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RunReportTest {
+
+    @Test
+    public void accumulates_phases_counts_and_bytes() {
+        RunReport.start("--request=\"request.xml\"");
+        final long start = System.nanoTime();
+        RunReport.phase("signing", start);
+        RunReport.phase("signing", start);
+        RunReport.count("signing-requests", 2);
+        RunReport.count("signing-requests", 3);
+        RunReport.bytes("response", 100);
+        final RunReport report = RunReport.finish(0);
+
+        assertThat(report.getPhaseNanos("signing")).isPositive();
+        assertThat(report.getCount("signing-requests")).isEqualTo(5);
+        assertThat(report.getBytes("response")).isEqualTo(100);
+        assertThat(report.summary()).contains("signing ", "(2x)", "signing-requests=5", "response=100 bytes");
+        assertThat(report.toJson())
+                .contains("\"command\": \"--request=\\\"request.xml\\\"\"")
+                .contains("\"signing\": {\"millis\": ")
+                .contains("\"times\": 2")
+                .contains("\"signing-requests\": 5")
+                .contains("\"response\": 100");
+    }
+
+    @Test
+    public void concurrent_writes_leave_a_complete_report(@TempDir Path tempDir) throws Exception {
+        final File file = tempDir.resolve(RunReport.FILENAME).toFile();
+        final List<CompletableFuture<Void>> writes = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            final String command = "command-" + i;
+            writes.add(CompletableFuture.runAsync(() -> {
+                RunReport.start(command);
+                RunReport.count("signing-requests", 1);
+                try {
+                    RunReport.finish(0).write(file);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }));
+        }
+        CompletableFuture.allOf(writes.toArray(new CompletableFuture<?>[0])).get();
+
+        final String json = Files.readString(file.toPath());
+        assertThat(json).startsWith("{").endsWith("}\n").containsOnlyOnce("\"command\"");
+        assertThat(tempDir.toFile().list()).containsExactly(RunReport.FILENAME);
+    }
+
+    @Test
+    public void does_not_record_without_a_report_on_the_thread() throws Exception {
+        final RunReport report = RunReport.start("command");
+        CompletableFuture.runAsync(() -> RunReport.count("signing-requests", 1)).get();
+        assertThat(RunReport.finish(0)).isSameAs(report);
+        assertThat(report.getCount("signing-requests")).isZero();
+
+        RunReport.count("signing-requests", 1);
+        assertThat(RunReport.finish(0)).isNull();
+    }
+}